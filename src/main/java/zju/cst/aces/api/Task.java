@@ -8,13 +8,10 @@ import zju.cst.aces.runner.AbstractRunner;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import zju.cst.aces.util.Counter;
@@ -185,6 +182,10 @@ public class Task {
         }
 
         log.info(String.format("\n==========================\n[%s] Generation finished",config.pluginSign));
+        log.info(config.getKeyScheduler().report());
+        if (config.isEnablePipeline()) {
+            log.info(config.getPipeline().report());
+        }
     }
 
     /**
@@ -192,55 +193,37 @@ public class Task {
      * @param classPaths the path to all classes in the current project
      */
     public void projectJob(List<String> classPaths) {
-        ExecutorService executor = Executors.newFixedThreadPool(config.getClassThreads());
-        List<Future<String>> futures = new ArrayList<>();
+        List<Callable<String>> jobs = new ArrayList<>();
         for (String classPath : classPaths) {
-            Callable<String> callable = new Callable<String>() {
-                @Override
-                public String call() throws Exception {
-                    String className = classPath.substring(classPath.lastIndexOf(File.separator) + 1, classPath.lastIndexOf("."));
-                    try {
-                        String fullClassName = getFullClassName(config, className);
-                        log.info(String.format("\n==========================\n[%s] Generating tests for class < ",config.pluginSign) + className + " > ...");
-                        ClassInfo info = AbstractRunner.getClassInfo(config, fullClassName);
-                        if (!Counter.filter(info)) {
-                            return "Skip class: " + classPath;
-                        }
-                        runner.runClass(fullClassName);
-                    } catch (IOException e) {
-                        log.error(String.format("[%s] Generate tests for class ",config.pluginSign) + className + " failed: " + e);
+            jobs.add(() -> {
+                String className = classPath.substring(classPath.lastIndexOf(File.separator) + 1, classPath.lastIndexOf("."));
+                try {
+                    String fullClassName = getFullClassName(config, className);
+                    log.info(String.format("\n==========================\n[%s] Generating tests for class < ",config.pluginSign) + className + " > ...");
+                    ClassInfo info = AbstractRunner.getClassInfo(config, fullClassName);
+                    if (!Counter.filter(info)) {
+                        return "Skip class: " + classPath;
                     }
-                    return "Processed " + classPath;
+                    runner.runClass(fullClassName);
+                } catch (IOException e) {
+                    log.error(String.format("[%s] Generate tests for class ",config.pluginSign) + className + " failed: " + e);
                 }
-            };
-            Future<String> future = executor.submit(callable);
-            futures.add(future);
+                return "Processed " + classPath;
+            });
         }
 
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-            public void run() {
-                executor.shutdownNow();
-            }
-        });
-
-        for (Future<String> future : futures) {
-            try {
-                String result = future.get();
+        for (String result : config.getJobScheduler().invokeAll(jobs)) {
+            if (result != null) {
                 System.out.println(result);
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
             }
         }
-
-        executor.shutdown();
     }
 
     public static String getFullClassName(Config config, String name) throws IOException {
         if (isFullName(name)) {
             return name;
         }
-        Path classMapPath = config.getClassNameMapPath();
-        Map<String, List<String>> classMap = config.getGSON().fromJson(Files.readString(classMapPath, StandardCharsets.UTF_8), Map.class);
+        Map<String, List<String>> classMap = config.getParsedInfoRepository().getClassNameMap();
         if (classMap.containsKey(name)) {
             if (classMap.get(name).size() > 1) {
                 throw new RuntimeException((String.format("[%s] Multiple classes Named ",config.pluginSign)) + name + ": " + classMap.get(name)
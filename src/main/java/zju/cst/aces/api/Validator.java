@@ -2,8 +2,11 @@ package zju.cst.aces.api;
 
 import org.junit.platform.launcher.listeners.TestExecutionSummary;
 import zju.cst.aces.dto.PromptInfo;
+import zju.cst.aces.dto.TestSource;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public interface Validator {
 
@@ -12,4 +15,16 @@ public interface Validator {
     boolean runtimeValidate(String fullTestName);
     public boolean compile(String className, Path outputPath, PromptInfo promptInfo);
     public TestExecutionSummary execute(String fullTestName);
+
+    /**
+     * Compile many candidate tests, e.g. all attempts of a class, the errors are set on the prompt info of each source.
+     * @return whether each source compiled, in the order of the sources
+     */
+    default List<Boolean> semanticValidate(List<TestSource> sources) {
+        List<Boolean> results = new ArrayList<>();
+        for (TestSource source : sources) {
+            results.add(semanticValidate(source.getCode(), source.getClassName(), source.getOutputPath(), source.getPromptInfo()));
+        }
+        return results;
+    }
 }
@@ -18,9 +18,19 @@ import zju.cst.aces.api.Validator;
 import zju.cst.aces.api.impl.LoggerImpl;
 import zju.cst.aces.api.Logger;
 import zju.cst.aces.api.impl.ValidatorImpl;
+import zju.cst.aces.api.impl.obfuscator.frame.SymbolFrameIndex;
+import zju.cst.aces.dto.ExampleUsageIndex;
 import zju.cst.aces.dto.OCM;
+import zju.cst.aces.parser.ParsedInfoRepository;
+import zju.cst.aces.parser.ProjectCorpus;
 import zju.cst.aces.parser.ProjectParser;
 import zju.cst.aces.prompt.PromptTemplate;
+import zju.cst.aces.util.ApiKeyScheduler;
+import zju.cst.aces.util.AsyncChatClient;
+import zju.cst.aces.util.ForkedTestExecutor;
+import zju.cst.aces.util.JobScheduler;
+import zju.cst.aces.util.StagePipeline;
+import zju.cst.aces.util.TestCompiler;
 
 import java.io.File;
 import java.io.IOException;
@@ -60,17 +70,36 @@ public class Config {
     public boolean enableRuleRepair;
     public boolean enableMerge;
     public boolean enableObfuscate;
+    public boolean enablePackedParseOutput;
+    public boolean enableIncrementalParse;
+    public boolean enableJsonParseExport;
+    public boolean enableInMemoryCompile;
+    public boolean enableVirtualThreads;
+    public boolean enablePipeline;
     public String[] obfuscateGroupIds;
     public int maxThreads;
     public int classThreads;
     public int methodThreads;
+    public int parseThreads;
+    public int forkedTestWorkers;
+    public long forkedTestTimeout;
+    public int forkedWorkerMaxExecutions;
+    public int speculativeAttempts;
+    public int generationWorkers;
+    public int validationWorkers;
     public int testNumber;
     public int maxRounds;
     public int maxPromptTokens;
     public int maxResponseTokens;
     public int minErrorTokens;
     public int sleepTime;
+    public int maxInFlightRequests;
+    public int maxRetries;
+    public int keyRequestsPerMinute;
+    public int keyTokensPerMinute;
+    public long keyCooldown;
     public int dependencyDepth;
+    public int infoCacheSize;
     public Model model;
     public Double temperature;
     public int topP;
@@ -97,6 +126,14 @@ public class Config {
     public static Map<String, TreeSet<String>> objectConstructionCode = new HashMap<>();
     public static OCM ocm = new OCM();
     public Validator validator;
+    public ParsedInfoRepository parsedInfoRepository;
+    public AsyncChatClient chatClient;
+    public ApiKeyScheduler keyScheduler;
+    public JobScheduler jobScheduler;
+    public StagePipeline pipeline;
+    public SymbolFrameIndex symbolFrameIndex;
+    public ExampleUsageIndex exampleUsageIndex;
+    public ProjectCorpus projectCorpus;
     public String pluginSign;
 
     @Getter
@@ -120,17 +157,36 @@ public class Config {
         public boolean enableRuleRepair = true;
         public boolean enableMerge = true;
         public boolean enableObfuscate = false;
+        public boolean enablePackedParseOutput = false;
+        public boolean enableIncrementalParse = false;
+        public boolean enableJsonParseExport = false;
+        public boolean enableInMemoryCompile = false;
+        public boolean enableVirtualThreads = false;
+        public boolean enablePipeline = false;
         public String[] obfuscateGroupIds;
         public int maxThreads = Runtime.getRuntime().availableProcessors() * 5;
         public int classThreads = (int) Math.ceil((double)  this.maxThreads / 10);
         public int methodThreads = (int) Math.ceil((double) this.maxThreads / this.classThreads);
+        public int parseThreads = 1;
+        public int forkedTestWorkers = 0;
+        public long forkedTestTimeout = ForkedTestExecutor.DEFAULT_TIMEOUT_MILLIS;
+        public int forkedWorkerMaxExecutions = ForkedTestExecutor.DEFAULT_MAX_EXECUTIONS;
+        public int speculativeAttempts = 0;
+        public int generationWorkers = 0;
+        public int validationWorkers = 0;
         public int testNumber = 5;
         public int maxRounds = 5;
         public int maxPromptTokens = 2600;
         public int maxResponseTokens = 1024;
         public int minErrorTokens = 500;
         public int sleepTime = 0;
+        public int maxInFlightRequests = AsyncChatClient.DEFAULT_MAX_IN_FLIGHT;
+        public int maxRetries = AsyncChatClient.DEFAULT_MAX_RETRIES;
+        public int keyRequestsPerMinute = 0;
+        public int keyTokensPerMinute = 0;
+        public long keyCooldown = ApiKeyScheduler.DEFAULT_COOLDOWN_MILLIS;
         public int dependencyDepth = 1;
+        public int infoCacheSize = ParsedInfoRepository.DEFAULT_MAX_SIZE;
         public Model model = Model.GPT_3_5_TURBO;
         public Double temperature = 0.5;
         public int topP = 1;
@@ -315,6 +371,62 @@ public class Config {
             return this;
         }
 
+        public ConfigBuilder enablePackedParseOutput(boolean enablePackedParseOutput) {
+            this.enablePackedParseOutput = enablePackedParseOutput;
+            return this;
+        }
+
+        public ConfigBuilder enableIncrementalParse(boolean enableIncrementalParse) {
+            this.enableIncrementalParse = enableIncrementalParse;
+            return this;
+        }
+
+        /**
+         * Also export the packed parse output to the json layout, one json file per class and per method.
+         */
+        public ConfigBuilder enableJsonParseExport(boolean enableJsonParseExport) {
+            this.enableJsonParseExport = enableJsonParseExport;
+            return this;
+        }
+
+        public ConfigBuilder enableInMemoryCompile(boolean enableInMemoryCompile) {
+            this.enableInMemoryCompile = enableInMemoryCompile;
+            return this;
+        }
+
+        /**
+         * Run the jobs on virtual threads, needs Java 21 or later at runtime.
+         */
+        public ConfigBuilder enableVirtualThreads(boolean enableVirtualThreads) {
+            this.enableVirtualThreads = enableVirtualThreads;
+            return this;
+        }
+
+        /**
+         * Run the test generation and the validation of the attempts on separate stages with their own workers,
+         * so the LLM requests of some methods overlap the compilation and execution of others.
+         */
+        public ConfigBuilder enablePipeline(boolean enablePipeline) {
+            this.enablePipeline = enablePipeline;
+            return this;
+        }
+
+        /**
+         * Workers of the pipeline stage building the prompts and waiting for the LLM, 0 for {@code maxThreads}.
+         */
+        public ConfigBuilder generationWorkers(int generationWorkers) {
+            this.generationWorkers = generationWorkers;
+            return this;
+        }
+
+        /**
+         * Workers of the pipeline stage compiling and executing the tests, 0 for one per core.
+         */
+        public ConfigBuilder validationWorkers(int validationWorkers) {
+            this.validationWorkers = validationWorkers;
+            return this;
+        }
+
         public ConfigBuilder properties(String configFile) {
             try {
                 Properties properties = new Properties();
@@ -343,6 +455,42 @@ public class Config {
             return this;
         }
 
+        public ConfigBuilder parseThreads(int parseThreads) {
+            if (parseThreads <= 0) {
+                this.parseThreads = Runtime.getRuntime().availableProcessors();
+            } else {
+                this.parseThreads = parseThreads;
+            }
+            return this;
+        }
+
+        /**
+         * Number of forked JVMs running the generated tests, 0 runs them in this JVM.
+         */
+        public ConfigBuilder forkedTestWorkers(int forkedTestWorkers) {
+            this.forkedTestWorkers = Math.max(0, forkedTestWorkers);
+            return this;
+        }
+
+        public ConfigBuilder forkedTestTimeout(long forkedTestTimeout) {
+            this.forkedTestTimeout = forkedTestTimeout;
+            return this;
+        }
+
+        public ConfigBuilder forkedWorkerMaxExecutions(int forkedWorkerMaxExecutions) {
+            this.forkedWorkerMaxExecutions = forkedWorkerMaxExecutions;
+            return this;
+        }
+
+        /**
+         * Number of attempts of a method run at the same time when {@code stopWhenSuccess} is set,
+         * the other attempts are cancelled once one passes. 0 or 1 runs the attempts one after another.
+         */
+        public ConfigBuilder speculativeAttempts(int speculativeAttempts) {
+            this.speculativeAttempts = speculativeAttempts;
+            return this;
+        }
+
         public ConfigBuilder url(String url) {
             if (!this.model.getModelName().contains("gpt-4") && !this.model.getModelName().contains("gpt-3.5") && url.equals("https://api.openai.com/v1/chat/completions")) {
                 throw new RuntimeException("Invalid url for model: " + this.model + ". Please configure the url in plugin configuration.");
@@ -387,11 +535,41 @@ public class Config {
             return this;
         }
 
+        public ConfigBuilder maxInFlightRequests(int maxInFlightRequests) {
+            this.maxInFlightRequests = maxInFlightRequests;
+            return this;
+        }
+
+        public ConfigBuilder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public ConfigBuilder keyRequestsPerMinute(int keyRequestsPerMinute) {
+            this.keyRequestsPerMinute = keyRequestsPerMinute;
+            return this;
+        }
+
+        public ConfigBuilder keyTokensPerMinute(int keyTokensPerMinute) {
+            this.keyTokensPerMinute = keyTokensPerMinute;
+            return this;
+        }
+
+        public ConfigBuilder keyCooldown(long keyCooldown) {
+            this.keyCooldown = keyCooldown;
+            return this;
+        }
+
         public ConfigBuilder dependencyDepth(int dependencyDepth) {
             this.dependencyDepth = dependencyDepth;
             return this;
         }
 
+        public ConfigBuilder infoCacheSize(int infoCacheSize) {
+            this.infoCacheSize = infoCacheSize;
+            return this;
+        }
+
         public ConfigBuilder model(String model) {
             this.model = Model.fromString(model);
             this.maxPromptTokens = this.model.getDefaultConfig().getContextLength() * 2 / 3;
@@ -521,9 +699,16 @@ public class Config {
         }
 
         public JavaSymbolSolver getSymbolSolver() {
+            CombinedTypeSolver combinedTypeSolver = createTypeSolver(this.getProject(), this.getClassPaths(), this.getLogger());
+            JavaSymbolSolver symbolSolver = new JavaSymbolSolver(combinedTypeSolver);
+            this.setParserFacade(JavaParserFacade.get(combinedTypeSolver));
+            return symbolSolver;
+        }
+
+        public static CombinedTypeSolver createTypeSolver(Project project, List<String> classPaths, Logger logger) {
             CombinedTypeSolver combinedTypeSolver = new CombinedTypeSolver();
             combinedTypeSolver.add(new ReflectionTypeSolver());
-            for (String dep : this.getClassPaths()) {
+            for (String dep : classPaths) {
                 try {
                     File depFile = new File(dep);
                     if (!depFile.exists() || !dep.endsWith("jar")) {
@@ -531,18 +716,16 @@ public class Config {
                     }
                     combinedTypeSolver.add(new JarTypeSolver(depFile));
                 } catch (Exception e) {
-                    this.getLogger().warn(e.getMessage());
-                    this.getLogger().debug(e.getMessage());
+                    logger.warn(e.getMessage());
+                    logger.debug(e.getMessage());
                 }
             }
-            for (String src : this.getProject().getCompileSourceRoots()) { // TODO: remove MavenProject
+            for (String src : project.getCompileSourceRoots()) { // TODO: remove MavenProject
                 if (new File(src).exists()) {
                     combinedTypeSolver.add(new JavaParserTypeSolver(src));
                 }
             }
-            JavaSymbolSolver symbolSolver = new JavaSymbolSolver(combinedTypeSolver);
-            this.setParserFacade(JavaParserFacade.get(combinedTypeSolver));
-            return symbolSolver;
+            return combinedTypeSolver;
         }
 
         public Config build() {
@@ -565,17 +748,36 @@ public class Config {
             config.setEnableRuleRepair(this.enableRuleRepair);
             config.setEnableMerge(this.enableMerge);
             config.setEnableObfuscate(this.enableObfuscate);
+            config.setEnablePackedParseOutput(this.enablePackedParseOutput);
+            config.setEnableIncrementalParse(this.enableIncrementalParse);
+            config.setEnableJsonParseExport(this.enableJsonParseExport);
+            config.setEnableInMemoryCompile(this.enableInMemoryCompile);
+            config.setEnableVirtualThreads(this.enableVirtualThreads);
+            config.setEnablePipeline(this.enablePipeline);
             config.setObfuscateGroupIds(this.obfuscateGroupIds);
             config.setMaxThreads(this.maxThreads);
             config.setClassThreads(this.classThreads);
             config.setMethodThreads(this.methodThreads);
+            config.setParseThreads(this.parseThreads);
+            config.setForkedTestWorkers(this.forkedTestWorkers);
+            config.setForkedTestTimeout(this.forkedTestTimeout);
+            config.setForkedWorkerMaxExecutions(this.forkedWorkerMaxExecutions);
+            config.setSpeculativeAttempts(this.speculativeAttempts);
+            config.setGenerationWorkers(this.generationWorkers > 0 ? this.generationWorkers : this.maxThreads);
+            config.setValidationWorkers(this.validationWorkers > 0 ? this.validationWorkers : Runtime.getRuntime().availableProcessors());
             config.setTestNumber(this.testNumber);
             config.setMaxRounds(this.maxRounds);
             config.setMaxPromptTokens(this.maxPromptTokens);
             config.setMaxResponseTokens(this.maxResponseTokens);
             config.setMinErrorTokens(this.minErrorTokens);
             config.setSleepTime(this.sleepTime);
+            config.setMaxInFlightRequests(this.maxInFlightRequests);
+            config.setMaxRetries(this.maxRetries);
+            config.setKeyRequestsPerMinute(this.keyRequestsPerMinute);
+            config.setKeyTokensPerMinute(this.keyTokensPerMinute);
+            config.setKeyCooldown(this.keyCooldown);
             config.setDependencyDepth(this.dependencyDepth);
+            config.setInfoCacheSize(this.infoCacheSize);
             config.setModel(this.model);
             config.setTemperature(this.temperature);
             config.setTopP(this.topP);
@@ -595,19 +797,118 @@ public class Config {
             config.setPort(this.port);
             config.setClient(this.client);
             config.setLogger(this.logger);
+            if (this.validator instanceof ValidatorImpl) {
+                TestCompiler compiler = ((ValidatorImpl) this.validator).getCompiler();
+                compiler.setInMemory(this.enableInMemoryCompile);
+                compiler.setNamespaced(this.enableMultithreading || this.speculativeAttempts > 1 || this.enablePipeline);
+                if (compiler.getForkedExecutor() != null) {
+                    compiler.getForkedExecutor().close();
+                    compiler.setForkedExecutor(null);
+                }
+                if (this.forkedTestWorkers > 0) {
+                    compiler.setForkedExecutor(new ForkedTestExecutor(this.classPaths, this.forkedTestWorkers,
+                            this.forkedTestTimeout, this.forkedWorkerMaxExecutions));
+                }
+            }
             config.setValidator(this.validator);
+            config.setParsedInfoRepository(new ParsedInfoRepository(this.parseOutput, this.classNameMapPath, this.infoCacheSize));
             config.setPluginSign(this.pluginSign);
             return config;
         }
     }
 
-    public String getRandomKey() {
-        Random rand = new Random();
-        if (apiKeys.length == 0) {
-            throw new RuntimeException("apiKeys is null!");
+    public synchronized ParsedInfoRepository getParsedInfoRepository() {
+        if (parsedInfoRepository == null) {
+            parsedInfoRepository = new ParsedInfoRepository(parseOutput, classNameMapPath, infoCacheSize);
+        }
+        return parsedInfoRepository;
+    }
+
+    public synchronized AsyncChatClient getChatClient() {
+        if (chatClient == null) {
+            chatClient = new AsyncChatClient(this);
+        }
+        return chatClient;
+    }
+
+    /**
+     * Create a parser with its own symbol solver, the parser and the symbol solver are not thread-safe,
+     * so each parse worker uses its own one.
+     */
+    public JavaParser createParser() {
+        JavaParser javaParser = new JavaParser();
+        javaParser.getParserConfiguration().setSymbolResolver(
+                new JavaSymbolSolver(ConfigBuilder.createTypeSolver(project, classPaths, logger)));
+        ProjectParser.setLanguageLevel(javaParser.getParserConfiguration());
+        return javaParser;
+    }
+
+    public synchronized ApiKeyScheduler getKeyScheduler() {
+        if (keyScheduler == null) {
+            keyScheduler = new ApiKeyScheduler(apiKeys, keyRequestsPerMinute, keyTokensPerMinute, keyCooldown);
+        }
+        return keyScheduler;
+    }
+
+    /**
+     * The pool running the class, method and attempt jobs, at most {@code maxThreads} at the same time,
+     * or one virtual thread per job if {@code enableVirtualThreads} is set and supported.
+     */
+    public synchronized JobScheduler getJobScheduler() {
+        if (jobScheduler == null || jobScheduler.isShutdown()) {
+            jobScheduler = new JobScheduler(maxThreads, enableVirtualThreads, logger);
+        }
+        return jobScheduler;
+    }
+
+    /**
+     * The symbol frames of the obfuscator at {@code symbolFramePath}, loaded once and shared by all prompts.
+     */
+    public synchronized SymbolFrameIndex getSymbolFrameIndex() {
+        if (symbolFrameIndex == null) {
+            symbolFrameIndex = new SymbolFrameIndex(symbolFramePath);
         }
-        String apiKey = apiKeys[rand.nextInt(apiKeys.length)];
-        return apiKey;
+        return symbolFrameIndex;
+    }
+
+    /**
+     * The example usages at {@code examplePath}, loaded once and shared by all prompts.
+     */
+    public synchronized ExampleUsageIndex getExampleUsageIndex() {
+        if (exampleUsageIndex == null) {
+            exampleUsageIndex = new ExampleUsageIndex(examplePath);
+        }
+        return exampleUsageIndex;
+    }
+
+    /**
+     * The source code of the project for the {@code project_full_code} prompt variable, read once and shared by all prompts.
+     */
+    public synchronized ProjectCorpus getProjectCorpus() {
+        if (projectCorpus == null) {
+            projectCorpus = new ProjectCorpus(project, logger);
+        }
+        return projectCorpus;
+    }
+
+    /**
+     * The generation and validation stages of the pipelined mode. The queues hold as many attempts as the
+     * generation workers plus two per validation worker, so the validation workers have the next test ready.
+     */
+    public synchronized StagePipeline getPipeline() {
+        if (pipeline == null) {
+            pipeline = new StagePipeline(generationWorkers + 2 * validationWorkers, logger);
+            pipeline.addStage(StagePipeline.GENERATION, generationWorkers);
+            pipeline.addStage(StagePipeline.VALIDATION, validationWorkers);
+        }
+        return pipeline;
+    }
+
+    /**
+     * Get the api key with the most headroom from the {@link ApiKeyScheduler}, without reserving a request.
+     */
+    public String getRandomKey() {
+        return getKeyScheduler().peek();
     }
 
     public void print() {
@@ -615,11 +916,27 @@ public class Config {
         logger.info("PluginSign >>>>"+this.getPluginSign() );
         logger.info(" Multithreading >>>> " + this.isEnableMultithreading());
         if (this.isEnableMultithreading()) {
-            logger.info(" - Class threads: " + this.getClassThreads() + ", Method threads: " + this.getMethodThreads());
+            logger.info(" - Parallel jobs: " + this.getMaxThreads());
         }
         logger.info(" Stop when success >>>> " + this.isStopWhenSuccess());
+        if (this.isStopWhenSuccess() && this.getSpeculativeAttempts() > 1) {
+            logger.info(" - Speculative attempts: " + this.getSpeculativeAttempts());
+        }
         logger.info(" No execution >>>> " + this.isNoExecution());
         logger.info(" Enable Merge >>>> " + this.isEnableMerge());
+        logger.info(" Packed parse output >>>> " + this.isEnablePackedParseOutput());
+        if (this.isEnablePackedParseOutput()) {
+            logger.info(" - Json export: " + this.isEnableJsonParseExport());
+        }
+        logger.info(" Incremental parse >>>> " + this.isEnableIncrementalParse());
+        logger.info(" In-memory compile >>>> " + this.isEnableInMemoryCompile());
+        logger.info(" Virtual threads >>>> " + this.isEnableVirtualThreads());
+        logger.info(" Pipeline >>>> " + this.isEnablePipeline());
+        if (this.isEnablePipeline()) {
+            logger.info(" - Generation workers: " + this.getGenerationWorkers() + ", validation workers: " + this.getValidationWorkers());
+        }
+        logger.info(" Parse threads >>>> " + this.getParseThreads());
+        logger.info(" Forked test workers >>>> " + this.getForkedTestWorkers());
         logger.info(" --- ");
         logger.info(" TestOutput Path >>> " + this.getTestOutput());
         logger.info(" TmpOutput Path >>> " + this.getTmpOutput());
@@ -637,7 +954,11 @@ public class Config {
         logger.info(" MinErrorTokens >>> " + this.getMinErrorTokens());
         logger.info(" MaxPromptTokens >>> " + this.getMaxPromptTokens());
         logger.info(" SleepTime >>> " + this.getSleepTime());
+        logger.info(" MaxInFlightRequests >>> " + this.getMaxInFlightRequests());
+        logger.info(" MaxRetries >>> " + this.getMaxRetries());
+        logger.info(" Key RPM/TPM >>> " + this.getKeyRequestsPerMinute() + " / " + this.getKeyTokensPerMinute());
         logger.info(" DependencyDepth >>> " + this.getDependencyDepth());
+        logger.info(" InfoCacheSize >>> " + this.getInfoCacheSize());
         logger.info("\n===================================================================\n");
         try {
             Thread.sleep(1000);
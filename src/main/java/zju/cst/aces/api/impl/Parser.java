@@ -37,6 +37,7 @@ public class Parser implements PreProcess {
     /**
      * Check whether the current project is installed successfully.
      * If it is the first time to run ChatUniTest, call {@link Parser#parse} to perform detailed analysis of the project.
+     * Otherwise the changed sources are re-parsed when {@link ProjectParser#canParseIncrementally()}.
      */
     public void parse() {
         try {
@@ -53,6 +54,10 @@ public class Parser implements PreProcess {
             log.info("\n==========================\n[ChatUniTest] Parsing class info ...");
             parser.parse();
             log.info("\n==========================\n[ChatUniTest] Parse finished");
+        } else if (parser.canParseIncrementally()) {
+            log.info("\n==========================\n[ChatUniTest] Parse output already exists, re-parsing changed sources ...");
+            parser.parse();
+            log.info("\n==========================\n[ChatUniTest] Parse finished");
         } else {
             log.info("\n==========================\n[ChatUniTest] Parse output already exists, skip parsing!");
         }
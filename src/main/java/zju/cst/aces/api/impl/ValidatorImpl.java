@@ -7,6 +7,7 @@ import org.junit.platform.launcher.listeners.TestExecutionSummary;
 import zju.cst.aces.api.Validator;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.PromptInfo;
+import zju.cst.aces.dto.TestSource;
 import zju.cst.aces.util.TestCompiler;
 
 import java.nio.file.Path;
@@ -41,8 +42,16 @@ public class ValidatorImpl implements Validator {
      */
     @Override
     public boolean semanticValidate(String code, String className, Path outputPath, PromptInfo promptInfo) {
-        compiler.setCode(code);
-        return compiler.compileTest(className, outputPath, promptInfo);
+        // the code is passed with the source rather than set on the shared compiler,
+        // concurrent attempts are compiled together
+        return compiler.compileTest(new TestSource(code, className, outputPath, promptInfo));
+    }
+    /**
+     * Compile the test files in one javac task.
+     */
+    @Override
+    public List<Boolean> semanticValidate(List<TestSource> sources) {
+        return compiler.compileTests(sources);
     }
     /**
      * Execute the test file to verify the file.
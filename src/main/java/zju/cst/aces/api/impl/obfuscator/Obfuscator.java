@@ -12,24 +12,32 @@ import com.github.javaparser.ast.expr.MethodReferenceExpr;
 import com.github.javaparser.ast.expr.SimpleName;
 import com.github.javaparser.ast.expr.StringLiteralExpr;
 import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
-import com.google.gson.reflect.TypeToken;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import lombok.Data;
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.tree.ClassNode;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.api.impl.obfuscator.frame.SymbolFrame;
 import zju.cst.aces.api.impl.obfuscator.util.ASMParser;
+import zju.cst.aces.api.impl.obfuscator.util.MultiPatternReplacer;
 import zju.cst.aces.dto.PromptInfo;
 import zju.cst.aces.dto.TestMessage;
 import zju.cst.aces.api.impl.obfuscator.util.SymbolAnalyzer;
-import zju.cst.aces.parser.ProjectParser;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.stream.Collectors;
 
@@ -43,6 +51,17 @@ public class Obfuscator {
     private SymbolFrame symbolFrame;
     private int shift = 1;
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    private static final int MAX_CACHED_REPLACERS = 64;
+    /** Replacers of the crypto maps used recently, the prompts and rounds of a class share the map of its symbol frame. */
+    private static final Map<Map<String, String>, MultiPatternReplacer[]> REPLACERS = Collections.synchronizedMap(
+            new LinkedHashMap<Map<String, String>, MultiPatternReplacer[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Map<String, String>, MultiPatternReplacer[]> eldest) {
+                    return size() > MAX_CACHED_REPLACERS;
+                }
+            });
+    /** Obfuscating and deobfuscating replacers of the current crypto map, reset when the map changes. */
+    private MultiPatternReplacer[] replacers;
     public List<String> targetGroupIds;
 
     public Obfuscator(Config config) {
@@ -229,34 +248,43 @@ public class Obfuscator {
         if (cryptoMap.size() == 0) {
             throw new RuntimeException("Crypto map is empty! Must run obfuscateJava first!");
         }
-        try {
-            for (String key : cryptoMap.keySet()) {
-                str = str.replaceAll(capitalize(key), capitalize(cryptoMap.get(key)));
-                str = str.replaceAll(decapitalize(key), decapitalize(cryptoMap.get(key)));
-            }
-        } catch (Exception e) {
-            config.getLogger().error("Failed to obfuscate String: " + e);
-        }
-        return str;
+        return getReplacers()[0].replace(str);
     }
 
     public String deobfuscateString(String str) {
         if (cryptoMap.size() == 0) {
             throw new RuntimeException("Crypto map is empty! Must run obfuscateJava first!");
         }
-        try {
-            for (String key : cryptoMap.keySet()) {
-                if (key.length() < 4) {
-                    continue;
+        return getReplacers()[1].replace(str);
+    }
+
+    /**
+     * The replacers of the crypto map, longer names first as in the order of the map,
+     * each name in its capitalized and decapitalized form.
+     */
+    private MultiPatternReplacer[] getReplacers() {
+        MultiPatternReplacer[] current = replacers;
+        if (current == null) {
+            current = REPLACERS.computeIfAbsent(Map.copyOf(cryptoMap), k -> {
+                MultiPatternReplacer obfuscate = new MultiPatternReplacer();
+                MultiPatternReplacer deobfuscate = new MultiPatternReplacer();
+                for (Map.Entry<String, String> entry : cryptoMap.entrySet()) {
+                    String key = entry.getKey();
+                    String value = entry.getValue();
+                    obfuscate.add(capitalize(key), capitalize(value));
+                    obfuscate.add(decapitalize(key), decapitalize(value));
+                    if (key.length() < 4) {
+                        continue;
+                    }
+                    // process the upper case and lower case of the crypto string.
+                    deobfuscate.add(capitalize(value), capitalize(key));
+                    deobfuscate.add(decapitalize(value), decapitalize(key));
                 }
-                // process the upper case and lower case of the crypto string.
-                str = str.replaceAll(capitalize(cryptoMap.get(key)), capitalize(key));
-                str = str.replaceAll(decapitalize(cryptoMap.get(key)), decapitalize(key));
-            }
-        } catch (Exception e) {
-            config.getLogger().error("Failed to deobfuscate String: " + e);
+                return new MultiPatternReplacer[]{obfuscate.build(), deobfuscate.build()};
+            });
+            replacers = current;
         }
-        return str;
+        return current;
     }
 
     public Map<String, String> obfuscateDep(Map<String, String> dep) {
@@ -368,50 +396,159 @@ public class Obfuscator {
         return oldName;
     }
 
-    // TODO: export to json
     public Map<String, SymbolFrame> generateSymbolFrames() {
-        Set<ClassNode> candidateClasses = new HashSet<>();
+        Map<String, SymbolFrame> symbolFrames = new ConcurrentHashMap<>();
+        generateSymbolFrames((name, frame) -> symbolFrames.merge(name, frame, (a, b) -> isNested(a) ? b : a));
+        return symbolFrames;
+    }
+
+    /**
+     * Nested classes are keyed by their simple name too, a top level class of the same name takes precedence.
+     */
+    private static boolean isNested(SymbolFrame frame) {
+        return frame.getClassName() != null && frame.getClassName().contains("$");
+    }
+
+    /**
+     * Analyze the classes of the project jar in the target groups and pass their frames to the sink.
+     *
+     * <P>
+     * The jar entries are filtered by name before they are read, and each class is decoded without its
+     * stack map frames, the local variable and line tables are kept for the symbols. With {@code parseThreads}
+     * greater than 1 the classes are analyzed in parallel, the sink is then called by the workers.
+     * A class is dropped once analyzed and at most two classes per worker wait, so the memory does not grow with the jar.
+     * </P>
+     */
+    private void generateSymbolFrames(BiConsumer<String, SymbolFrame> sink) {
         ASMParser asmParser = new ASMParser(config);
-        Map<String, SymbolFrame> symbolFrames = new HashMap<>();
-        try {
-            Path artifactPath = config.getProject().getArtifactPath();
-            JarFile projectJar = new JarFile(artifactPath.toString());
-            candidateClasses.addAll(asmParser.loadClasses(projectJar));
-            for (ClassNode classNode : candidateClasses) {
-                String className = classNode.name;
-                if (!SymbolFrame.isClassInGroup(className, targetGroupIds)) {
+        int threads = Math.max(1, config.getParseThreads());
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        Semaphore pending = new Semaphore(threads * 2);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Path artifactPath = config.getProject().getArtifactPath();
+        try (JarFile projectJar = new JarFile(artifactPath.toString())) {
+            Enumeration<JarEntry> entries = projectJar.entries();
+            while (entries.hasMoreElements() && error.get() == null) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.getName().endsWith(".class") || !SymbolFrame.isClassInGroup(entry.getName(), targetGroupIds)) {
                     continue;
                 }
-                SymbolAnalyzer analyzer = new SymbolAnalyzer();
-                SymbolFrame frame = analyzer.analyze(classNode);
-                frame.filterSymbolsByGroupId(targetGroupIds);
-
-                String packageDecl = className.substring(0, className.lastIndexOf("/")).replace("/", ".");
-                String name = className.contains("$") ?
-                        className.substring(className.lastIndexOf("$") + 1): className.substring(className.lastIndexOf("/") + 1);
-                symbolFrames.put(packageDecl + "." + name, frame); // should be full qualified name
+                byte[] bytes = asmParser.readClassBytes(projectJar, entry);
+                if (bytes == null) {
+                    continue;
+                }
+                if (pool == null) {
+                    analyzeClass(asmParser, bytes, sink);
+                    continue;
+                }
+                pending.acquireUninterruptibly();
+                pool.execute(() -> {
+                    try {
+                        analyzeClass(asmParser, bytes, sink);
+                    } catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    } finally {
+                        pending.release();
+                    }
+                });
             }
+            pending.acquireUninterruptibly(threads * 2);
         } catch (Exception e) {
             throw new RuntimeException("In Obfuscator.generateSymbolFrames: " + e);
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+        if (error.get() != null) {
+            throw new RuntimeException("In Obfuscator.generateSymbolFrames: " + error.get());
         }
-        return symbolFrames;
     }
 
+    private void analyzeClass(ASMParser asmParser, byte[] bytes, BiConsumer<String, SymbolFrame> sink) {
+        ClassNode classNode = asmParser.getNode(bytes, ClassReader.SKIP_FRAMES);
+        String className = classNode.name;
+        if (className == null || !SymbolFrame.isClassInGroup(className, targetGroupIds)) {
+            return;
+        }
+        SymbolAnalyzer analyzer = new SymbolAnalyzer();
+        SymbolFrame frame = analyzer.analyze(classNode);
+        frame.filterSymbolsByGroupId(targetGroupIds);
+
+        String packageDecl = className.substring(0, className.lastIndexOf("/")).replace("/", ".");
+        String name = className.contains("$") ?
+                className.substring(className.lastIndexOf("$") + 1): className.substring(className.lastIndexOf("/") + 1);
+        sink.accept(packageDecl + "." + name, frame); // should be full qualified name
+    }
+
+    /**
+     * Write the frames to a temporary file as they are analyzed, without collecting them first, and move it
+     * to {@code symbolFramePath} once all classes are done.
+     * The frames of nested classes are written last, if no top level class has the same name.
+     */
     public void exportSymbolFrame() {
-        ProjectParser.exportJson(config.getSymbolFramePath(), generateSymbolFrames());
+        Path path = config.getSymbolFramePath();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.getParent());
+            try (JsonWriter writer = config.getGSON().newJsonWriter(Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))) {
+                writer.beginObject();
+                Set<String> written = new HashSet<>();
+                Map<String, SymbolFrame> nested = new LinkedHashMap<>();
+                generateSymbolFrames((name, frame) -> {
+                    synchronized (written) {
+                        if (isNested(frame)) {
+                            nested.putIfAbsent(name, frame);
+                        } else if (written.add(name)) {
+                            writeFrame(writer, name, frame);
+                        }
+                    }
+                });
+                nested.forEach((name, frame) -> {
+                    if (written.add(name)) {
+                        writeFrame(writer, name, frame);
+                    }
+                });
+                writer.endObject();
+            }
+            // the frames of a failed generation never replace the previous file
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+            }
+            throw new RuntimeException("In Obfuscator.exportSymbolFrame: " + e);
+        }
+        config.getSymbolFrameIndex().invalidate();
     }
 
-    public SymbolFrame findSymbolFrameByClass(String fullClassName) {
+    private void writeFrame(JsonWriter writer, String name, SymbolFrame frame) {
         try {
-            Map<String, SymbolFrame> symbolFrames = GSON.fromJson(Files.readString(config.getSymbolFramePath(), StandardCharsets.UTF_8), new TypeToken<Map<String, SymbolFrame>>(){}.getType());
-            return symbolFrames.get(fullClassName);
+            writer.name(name);
+            config.getGSON().toJson(frame, SymbolFrame.class, writer);
         } catch (IOException e) {
-            throw new RuntimeException("In Obfuscator.findSymbolFrameByClass: " + e);
+            throw new RuntimeException("In Obfuscator.exportSymbolFrame: " + e);
         }
     }
 
+    /**
+     * Look up the frame in the shared {@link zju.cst.aces.api.impl.obfuscator.frame.SymbolFrameIndex},
+     * the returned frame is read-only.
+     */
+    public SymbolFrame findSymbolFrameByClass(String fullClassName) {
+        return config.getSymbolFrameIndex().get(fullClassName);
+    }
+
+    public void setCryptoMap(Map<String, String> cryptoMap) {
+        this.cryptoMap = cryptoMap;
+        this.replacers = null;
+    }
+
     public void putCryptoMap(String k, String v) {
-        this.cryptoMap.put(k, v);
+        if (!v.equals(this.cryptoMap.put(k, v))) {
+            this.replacers = null;
+        }
     }
 
     private Map<String, String> createReversedMap(Map<String, String> map) {
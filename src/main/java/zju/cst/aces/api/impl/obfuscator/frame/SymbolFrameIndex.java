@@ -0,0 +1,20 @@
+package zju.cst.aces.api.impl.obfuscator.frame;
+
+import zju.cst.aces.parser.PackedJsonIndex;
+
+import java.nio.file.Path;
+
+/**
+ * Index of the symbol frames exported to {@code symbolFramePath}, keyed by full class name.
+ */
+public class SymbolFrameIndex extends PackedJsonIndex<SymbolFrame, SymbolFrame> {
+
+    public SymbolFrameIndex(Path jsonPath) {
+        super(jsonPath, SymbolFrame.class);
+    }
+
+    @Override
+    protected SymbolFrame toEntry(String fullClassName, SymbolFrame frame) {
+        return frame;
+    }
+}
@@ -82,11 +82,37 @@ public class ASMParser {
     }
 
 
+    /**
+     * Read the bytes of a class entry without decoding it.
+     * @return {@code null} if the entry is not a valid class file
+     */
+    public byte[] readClassBytes(JarFile jar, JarEntry entry) {
+        try (InputStream jis = jar.getInputStream(entry)) {
+            byte[] bytes = jis.readAllBytes();
+            if (bytes.length < 4 || (bytes[0] & 0xFF) != 0xCA || (bytes[1] & 0xFF) != 0xFE
+                    || (bytes[2] & 0xFF) != 0xBA || (bytes[3] & 0xFF) != 0xBE) {
+                // This class doesn't have a valid magic
+                return null;
+            }
+            return bytes;
+        } catch (IOException e) {
+            config.getLogger().warn("Fail to read class {} in jar {}" + entry + jar.getName() + e);
+            return null;
+        }
+    }
+
     private ClassNode getNode(byte[] bytes) {
+        return getNode(bytes, 0);
+    }
+
+    /**
+     * @param parsingOptions the {@link ClassReader} options, e.g. {@link ClassReader#SKIP_FRAMES}
+     */
+    public ClassNode getNode(byte[] bytes, int parsingOptions) {
         ClassReader cr = new ClassReader(bytes);
         ClassNode cn = new ClassNode();
         try {
-            cr.accept(cn, 0);
+            cr.accept(cn, parsingOptions);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -0,0 +1,170 @@
+package zju.cst.aces.api.impl.obfuscator.util;
+
+import java.util.*;
+
+/**
+ * Replaces many literal patterns in one pass over the text, using an Aho–Corasick automaton.
+ *
+ * <P>
+ * Patterns are added in priority order. When matches overlap, the pattern added first wins, and the
+ * occurrences of one pattern are taken from left to right, which is what replacing the patterns one
+ * after another in that order gives, except that a replacement is never matched again.
+ * A pattern added twice keeps its first replacement. The replacer is immutable once built and can be shared.
+ * </P>
+ */
+public class MultiPatternReplacer {
+
+    private final List<String> patterns = new ArrayList<>();
+    private final List<String> replacements = new ArrayList<>();
+    /** Children of each trie node, by character. */
+    private final List<Map<Character, Integer>> children = new ArrayList<>();
+    /** Pattern ending at each node, -1 if none. */
+    private int[] output;
+    /** Longest proper suffix of each node that is also a node. */
+    private int[] fail;
+    /** Nearest node on the fail chain with an output, -1 if none. */
+    private int[] outputLink;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private boolean built = false;
+
+    public MultiPatternReplacer() {
+        children.add(new HashMap<>());
+    }
+
+    /**
+     * Add a pattern with a lower priority than the patterns already added, empty patterns are ignored.
+     */
+    public MultiPatternReplacer add(String pattern, String replacement) {
+        if (built) {
+            throw new IllegalStateException("In MultiPatternReplacer.add: replacer is already built");
+        }
+        if (pattern == null || pattern.isEmpty() || ids.containsKey(pattern)) {
+            return this;
+        }
+        ids.put(pattern, patterns.size());
+        patterns.add(pattern);
+        replacements.add(replacement);
+        return this;
+    }
+
+    /**
+     * Build the trie and its failure links.
+     */
+    public MultiPatternReplacer build() {
+        List<Integer> ends = new ArrayList<>();
+        ends.add(-1);
+        for (int id = 0; id < patterns.size(); id++) {
+            int node = 0;
+            for (char c : patterns.get(id).toCharArray()) {
+                Integer child = children.get(node).get(c);
+                if (child == null) {
+                    child = children.size();
+                    children.add(new HashMap<>());
+                    ends.add(-1);
+                    children.get(node).put(c, child);
+                }
+                node = child;
+            }
+            ends.set(node, id);
+        }
+        int size = children.size();
+        output = new int[size];
+        fail = new int[size];
+        outputLink = new int[size];
+        for (int i = 0; i < size; i++) {
+            output[i] = ends.get(i);
+        }
+        outputLink[0] = -1;
+        // breadth first, the links of a node only depend on shallower nodes
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : children.get(0).values()) {
+            fail[child] = 0;
+            outputLink[child] = -1;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (Map.Entry<Character, Integer> entry : children.get(node).entrySet()) {
+                int child = entry.getValue();
+                int f = fail[node];
+                while (f != 0 && !children.get(f).containsKey(entry.getKey())) {
+                    f = fail[f];
+                }
+                Integer next = children.get(f).get(entry.getKey());
+                fail[child] = next != null && next != child ? next : 0;
+                outputLink[child] = output[fail[child]] >= 0 ? fail[child] : outputLink[fail[child]];
+                queue.add(child);
+            }
+        }
+        built = true;
+        return this;
+    }
+
+    /**
+     * @return the text with the selected matches replaced, the same instance if nothing matches
+     */
+    public String replace(String text) {
+        if (!built) {
+            throw new IllegalStateException("In MultiPatternReplacer.replace: replacer is not built");
+        }
+        if (text == null || text.isEmpty() || patterns.isEmpty()) {
+            return text;
+        }
+        // matches as (pattern id << 32 | start), sorted by priority then position
+        long[] matches = new long[16];
+        int count = 0;
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Integer next = children.get(node).get(c);
+            while (next == null && node != 0) {
+                node = fail[node];
+                next = children.get(node).get(c);
+            }
+            node = next == null ? 0 : next;
+            for (int m = output[node] >= 0 ? node : outputLink[node]; m >= 0; m = outputLink[m]) {
+                int id = output[m];
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = ((long) id << 32) | (i + 1 - patterns.get(id).length());
+            }
+        }
+        if (count == 0) {
+            return text;
+        }
+        Arrays.sort(matches, 0, count);
+
+        boolean[] claimed = new boolean[text.length()];
+        int[] chosen = new int[text.length()];
+        Arrays.fill(chosen, -1);
+        for (int k = 0; k < count; k++) {
+            int id = (int) (matches[k] >>> 32);
+            int start = (int) matches[k];
+            int end = start + patterns.get(id).length();
+            boolean free = true;
+            for (int i = start; i < end && free; i++) {
+                free = !claimed[i];
+            }
+            if (free) {
+                Arrays.fill(claimed, start, end, true);
+                chosen[start] = id;
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); ) {
+            if (chosen[i] >= 0) {
+                sb.append(replacements.get(chosen[i]));
+                i += patterns.get(chosen[i]).length();
+            } else {
+                sb.append(text.charAt(i++));
+            }
+        }
+        return sb.toString();
+    }
+
+    public int size() {
+        return patterns.size();
+    }
+}
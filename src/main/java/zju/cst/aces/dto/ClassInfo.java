@@ -48,6 +48,7 @@ public class ClassInfo {
         this.extend = classNode.getExtendedTypes().toString();
         this.implement = classNode.getImplementedTypes().toString();
         this.packageName = cu.getPackageDeclaration().orElse(null) == null ? "" : cu.getPackageDeclaration().get().getNameAsString();
+        this.fullClassName = this.packageName.isEmpty() ? this.className : this.packageName + "." + this.className;
         this.packageDeclaration = getPackageDeclaration(cu);
         this.classSignature = classSignature;
         this.imports = imports;
@@ -7,9 +7,12 @@ import zju.cst.aces.api.config.Config;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.stream.Collectors;
 
+/**
+ * Example usages of the methods of a class, the usages of each method are sorted shortest first.
+ */
 public class ExampleUsage {
     public String className;
     public Map<String, List<String>> methodUsages;
@@ -17,7 +20,29 @@ public class ExampleUsage {
 
     public ExampleUsage(Path examplePath, String className) {
         this.className = className;
-        this.methodUsages  = loadUsages(examplePath, className);
+        this.methodUsages  = topUsages(loadUsages(examplePath, className), Integer.MAX_VALUE);
+    }
+
+    public ExampleUsage(String className, Map<String, List<String>> methodUsages) {
+        this.className = className;
+        this.methodUsages = methodUsages;
+    }
+
+    /**
+     * The {@code k} shortest usages of each method, shortest first.
+     */
+    public static Map<String, List<String>> topUsages(Map<String, List<String>> methodUsages, int k) {
+        if (methodUsages == null) {
+            return null;
+        }
+        Map<String, List<String>> top = new LinkedHashMap<>();
+        methodUsages.forEach((methodSig, usages) -> {
+            if (usages != null && !usages.isEmpty()) {
+                top.put(methodSig, usages.stream().filter(Objects::nonNull)
+                        .sorted(Comparator.comparingInt(String::length)).limit(k).collect(Collectors.toList()));
+            }
+        });
+        return top;
     }
 
     public Map<String, List<String>> loadUsages(Path path, String name) {
@@ -38,13 +63,15 @@ public class ExampleUsage {
         if (methodUsages == null) {
             return null;
         }
-        // sort the list and return the shortest usage of the list
-        if (methodUsages.containsKey(methodSig)) {
-            List<String> usages = methodUsages.get(methodSig);
-            usages.sort((a, b) -> a.length() - b.length());
-            return usages.get(0);
-        } else {
-            return null;
-        }
+        List<String> usages = methodUsages.get(methodSig);
+        return usages == null || usages.isEmpty() ? null : usages.get(0);
+    }
+
+    /**
+     * @return at most {@code k} usages of the method, shortest first
+     */
+    public List<String> getTopUsages(String methodSig, int k) {
+        List<String> usages = methodUsages == null ? null : methodUsages.get(methodSig);
+        return usages == null ? Collections.emptyList() : usages.subList(0, Math.min(k, usages.size()));
     }
 }
@@ -0,0 +1,38 @@
+package zju.cst.aces.dto;
+
+import com.google.gson.reflect.TypeToken;
+import zju.cst.aces.parser.PackedJsonIndex;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the example usages at {@code examplePath}, keyed by class name.
+ * Only the {@value #TOP_K} shortest usages of each method are packed, shortest first.
+ */
+public class ExampleUsageIndex extends PackedJsonIndex<Map<String, List<String>>, ExampleUsage> {
+    public static final int TOP_K = 3;
+
+    public ExampleUsageIndex(Path jsonPath) {
+        super(jsonPath, new TypeToken<Map<String, List<String>>>() {}.getType());
+    }
+
+    @Override
+    protected Map<String, List<String>> pack(Map<String, List<String>> methodUsages) {
+        return ExampleUsage.topUsages(methodUsages, TOP_K);
+    }
+
+    @Override
+    protected ExampleUsage toEntry(String className, Map<String, List<String>> methodUsages) {
+        return new ExampleUsage(className, methodUsages);
+    }
+
+    /**
+     * @return the shortest usage of the method, or {@code null} if there is none
+     */
+    public String getShortestUsage(String className, String methodSig) {
+        ExampleUsage usage = get(className);
+        return usage == null ? null : usage.getShortestUsage(methodSig);
+    }
+}
@@ -1,9 +1,9 @@
 package zju.cst.aces.dto;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.TreeSet;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.util.*;
 
 /**
  * Method Example Map
@@ -25,6 +25,44 @@ public class MethodExampleMap {
         return this.mem;
     }
 
+    /**
+     * Load a method example map exported as json.
+     */
+    public static MethodExampleMap fromJson(String json, Gson gson) {
+        MethodExampleMap methodExampleMap = new MethodExampleMap();
+        Map<String, List<MEC>> mem = gson.fromJson(json, new TypeToken<Map<String, List<MEC>>>(){}.getType());
+        if (mem != null) {
+            mem.forEach((typeName, invocations) -> invocations.forEach(mec ->
+                    methodExampleMap.add(typeName, mec.className, mec.methodName, mec.lineNum, mec.code)));
+        }
+        return methodExampleMap;
+    }
+
+    public void addAll(MethodExampleMap other) {
+        other.mem.forEach((typeName, invocations) -> invocations.forEach(mec ->
+                add(typeName, mec.className, mec.methodName, mec.lineNum, mec.code)));
+    }
+
+    /**
+     * Remove the examples found in the given caller classes.
+     */
+    public void removeCallerClasses(Set<String> classNames) {
+        mem.values().forEach(invocations -> invocations.removeIf(mec -> classNames.contains(mec.className)));
+        mem.values().removeIf(Set::isEmpty);
+    }
+
+    /**
+     * Remove the examples of the methods declared in the given classes.
+     */
+    public void removeMethodsOf(Set<String> classNames) {
+        mem.keySet().removeIf(typeName -> {
+            int end = typeName.indexOf('(');
+            String name = end < 0 ? typeName : typeName.substring(0, end);
+            int dot = name.lastIndexOf('.');
+            return dot > 0 && classNames.contains(name.substring(0, dot));
+        });
+    }
+
     static class MEC {
         String className;
         String methodName;
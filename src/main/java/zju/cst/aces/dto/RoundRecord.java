@@ -16,6 +16,7 @@ public class RoundRecord {
     public String code;
     public boolean hasError;
     public TestMessage errorMsg;
+    public boolean cancelled;
 
     public RoundRecord(int round) {
         this.round = round;
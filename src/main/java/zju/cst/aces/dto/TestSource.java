@@ -0,0 +1,35 @@
+package zju.cst.aces.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A candidate test to compile, see {@link zju.cst.aces.api.Validator#semanticValidate(java.util.List)}.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TestSource {
+    private static final Pattern PACKAGE_PATTERN = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+
+    private String code;
+    /** Simple name of the test class */
+    private String className;
+    /** File the compilation errors are exported to */
+    private Path outputPath;
+    /** Receives the compilation errors, may be null */
+    private PromptInfo promptInfo;
+
+    /**
+     * Full name of the test class, from the package declaration of the code.
+     */
+    public String getFullClassName() {
+        Matcher matcher = PACKAGE_PATTERN.matcher(code == null ? "" : code);
+        return matcher.find() ? matcher.group(1) + "." + className : className;
+    }
+}
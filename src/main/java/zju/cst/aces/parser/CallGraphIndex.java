@@ -0,0 +1,40 @@
+package zju.cst.aces.parser;
+
+import com.github.javaparser.ast.body.CallableDeclaration;
+import slicing.graphs.CallGraph;
+
+import java.util.*;
+
+/**
+ * Callers and callees of each method(constructor), indexed once from a {@link CallGraph}
+ * so that lookups do not rebuild or scan the graph.
+ * Declarations are matched like the vertices of the call graph, by signature and declaring type name.
+ */
+public class CallGraphIndex {
+
+    private final Map<CallGraph.Vertex, Set<CallableDeclaration<?>>> callers = new HashMap<>();
+    private final Map<CallGraph.Vertex, Set<CallableDeclaration<?>>> callees = new HashMap<>();
+
+    public CallGraphIndex(CallGraph callGraph) {
+        for (CallGraph.Edge<?> edge : callGraph.edgeSet()) {
+            CallGraph.Vertex source = callGraph.getEdgeSource(edge);
+            CallGraph.Vertex target = callGraph.getEdgeTarget(edge);
+            callees.computeIfAbsent(source, k -> new LinkedHashSet<>()).add(target.getDeclaration());
+            callers.computeIfAbsent(target, k -> new LinkedHashSet<>()).add(source.getDeclaration());
+        }
+    }
+
+    /**
+     * Methods(constructors) that may call the given declaration.
+     */
+    public Set<CallableDeclaration<?>> getCallers(CallableDeclaration<?> callee) {
+        return callers.getOrDefault(new CallGraph.Vertex(callee), Collections.emptySet());
+    }
+
+    /**
+     * Methods(constructors) that may be called when executing the given declaration.
+     */
+    public Set<CallableDeclaration<?>> getCallees(CallableDeclaration<?> caller) {
+        return callees.getOrDefault(new CallGraph.Vertex(caller), Collections.emptySet());
+    }
+}
@@ -19,7 +19,6 @@ import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclar
 import com.github.javaparser.resolution.types.ResolvedReferenceType;
 import com.google.gson.Gson;
 import org.jetbrains.annotations.NotNull;
-import slicing.graphs.CallGraph;
 import slicing.graphs.sdg.SDG;
 import zju.cst.aces.api.Logger;
 import zju.cst.aces.api.Project;
@@ -39,9 +38,9 @@ import java.util.stream.Stream;
 
 public class ClassParser {
     private static final String separator = "_";
-    private static Path classOutputPath;
-    private static ClassInfo classInfo;
-    private static JavaParser parser;
+    private final Path classOutputPath;
+    private final JavaParser parser;
+    private ClassInfo classInfo;
     public int methodCount = 0;
     Project project;
     Logger logger;
@@ -49,6 +48,10 @@ public class ClassParser {
     AtomicInteger sharedInteger;
     Map<String, Map<String, String>> classMapping;
     OCM ocm;
+    PackedInfoStore packedInfoStore;
+    /** Call graph of the compilation unit {@link #callGraphCu}, built on the first caller lookup in it. */
+    CallGraphIndex callGraphIndex;
+    CompilationUnit callGraphCu;
 
     public ClassParser(JavaParser javaParser, Project project, Path path,
                        Logger logger, Gson gson, AtomicInteger sharedInteger,
@@ -63,6 +66,13 @@ public class ClassParser {
         this.ocm = ocm;
     }
 
+    /**
+     * Write the extracted infos to the packed store instead of one json file per class and per method.
+     */
+    public void setPackedInfoStore(PackedInfoStore packedInfoStore) {
+        this.packedInfoStore = packedInfoStore;
+    }
+
     public int extractClass(String classPath) throws FileNotFoundException {
         File file = new File(classPath);
         ParseResult<CompilationUnit> parseResult = parser.parse(file);
@@ -614,6 +624,10 @@ public class ClassParser {
     }
 
     private void exportClassInfo(ClassInfo classInfo, ClassOrInterfaceDeclaration classNode) throws IOException {
+        if (packedInfoStore != null) {
+            packedInfoStore.putClassInfo(classInfo);
+            return;
+        }
         Path classOutputDir = classOutputPath.resolve(classNode.getName().getIdentifier());
         if (!Files.exists(classOutputDir)) {
             Files.createDirectories(classOutputDir);
@@ -626,6 +640,10 @@ public class ClassParser {
     }
 
     private void exportMethodInfo(MethodInfo methodInfo, ClassOrInterfaceDeclaration classNode, MethodDeclaration node) throws IOException {
+        if (packedInfoStore != null) {
+            packedInfoStore.putMethodInfo(classInfo.fullClassName, methodInfo);
+            return;
+        }
         Path classOutputDir = classOutputPath.resolve(classNode.getName().getIdentifier());
         if (!Files.exists(classOutputDir)) {
             Files.createDirectories(classOutputDir);
@@ -638,6 +656,10 @@ public class ClassParser {
     }
 
     private void exportConstructorInfo(MethodInfo methodInfo, ClassOrInterfaceDeclaration classNode, ConstructorDeclaration node) throws IOException {
+        if (packedInfoStore != null) {
+            packedInfoStore.putMethodInfo(classInfo.fullClassName, methodInfo);
+            return;
+        }
         Path classOutputDir = classOutputPath.resolve(classNode.getName().getIdentifier());
         if (!Files.exists(classOutputDir)) {
             Files.createDirectories(classOutputDir);
@@ -685,7 +707,9 @@ public class ClassParser {
         if (this.classMapping == null) {
             this.classMapping = new LinkedHashMap<>();
         }
-        this.classMapping.put("class" + classInfo.index, map);
+        synchronized (this.classMapping) {
+            this.classMapping.put("class" + classInfo.index, map);
+        }
     }
 
     /**
@@ -695,7 +719,6 @@ public class ClassParser {
      * @param node
      */
     public void findObjectConstructionCode(CompilationUnit cu, CallableDeclaration node) {
-        var p = findCallerByCallGraph(cu, node);
         String methodBrief = getBriefMethod(cu, node);
 
         List<ObjectCreationExpr> objCreationStmts = node.findAll(ObjectCreationExpr.class);
@@ -822,21 +845,17 @@ public class ClassParser {
         }
     }
 
-    private Set<CallableDeclaration<?>> findCallerByCallGraph(CompilationUnit cu, CallableDeclaration node) {
-        NodeList<CompilationUnit> cus = new NodeList<>();
-        cus.add(cu);
-        SDG sdg = new SDG();
-        sdg.build(cus);
-        CallGraph cg = sdg.getCallGraph();
-        CallGraph.Vertex v = new CallGraph.Vertex(node);
-        if (cg.containsVertex(v)) {
-            if (node instanceof MethodDeclaration) {
-                return cg.getCallTargets(node.asMethodDeclaration()).collect(Collectors.toSet());
-            } else if (node instanceof ConstructorDeclaration) {
-                return cg.getCallTargets(node.asConstructorDeclaration()).collect(Collectors.toSet());
-            }
+    private Set<CallableDeclaration<?>> findCallerByCallGraph(CompilationUnit cu, CallableDeclaration<?> node) {
+        if (callGraphIndex == null || callGraphCu != cu) {
+            NodeList<CompilationUnit> cus = new NodeList<>();
+            cus.add(cu);
+            SDG sdg = new SDG();
+            sdg.build(cus);
+            callGraphIndex = new CallGraphIndex(sdg.getCallGraph());
+            callGraphCu = cu;
         }
-        return null;
+        Set<CallableDeclaration<?>> callers = callGraphIndex.getCallers(node);
+        return callers.isEmpty() ? null : callers;
     }
 
     /**
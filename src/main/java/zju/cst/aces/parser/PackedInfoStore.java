@@ -0,0 +1,348 @@
+package zju.cst.aces.parser;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.dto.MethodInfo;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Packed format of the parse output, an alternative to one json file per class and per method.
+ *
+ * <P>
+ * All infos are appended to a single data file ({@value #DATA_FILE}) as compact json records,
+ * and an offset index ({@value #INDEX_FILE}) maps each key to its record.
+ * The key of a class is its full class name, the key of a method(constructor) is
+ * {@code fullClassName#methodSignature}. When a key is written twice the latest record wins,
+ * so re-parsed classes can simply be appended. Records are read through a memory-mapped {@link FileChannel}.
+ * The records appended by a writer only become visible with {@link #commit()}, a writer closed without
+ * a commit drops them, so a failed write never leaves an index over a truncated data file.
+ * Replaced and removed records stay in the data file until a commit finds that they take more than
+ * half of it, the file is then rewritten with the live records only.
+ * </P>
+ */
+public class PackedInfoStore implements Closeable {
+
+    public static final String DATA_FILE = "infos.dat";
+    public static final String INDEX_FILE = "infos.idx";
+    private static final String METHOD_SEPARATOR = "#";
+    private static final int INDEX_VERSION = 1;
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final double MAX_DEAD_SHARE = 0.5;
+
+    private final Path dataPath;
+    private final Path indexPath;
+    private final Map<String, long[]> index;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private OutputStream appender;
+    private long dataSize;
+    /** Size of the data file covered by the index on disk, the appended records are dropped back to it. */
+    private long committedSize;
+
+    private PackedInfoStore(Path dir, Map<String, long[]> index) {
+        this.dataPath = dir.resolve(DATA_FILE);
+        this.indexPath = dir.resolve(INDEX_FILE);
+        this.index = index;
+    }
+
+    /**
+     * Whether a packed parse output exists in the directory.
+     */
+    public static boolean exists(Path dir) {
+        return dir != null && Files.exists(dir.resolve(INDEX_FILE)) && Files.exists(dir.resolve(DATA_FILE));
+    }
+
+    /**
+     * Open a packed parse output for reading.
+     */
+    public static PackedInfoStore openReader(Path dir) throws IOException {
+        PackedInfoStore store = new PackedInfoStore(dir, readIndex(dir.resolve(INDEX_FILE)));
+        store.channel = FileChannel.open(store.dataPath, StandardOpenOption.READ);
+        store.dataSize = store.channel.size();
+        if (store.dataSize <= Integer.MAX_VALUE) {
+            store.mapped = store.channel.map(FileChannel.MapMode.READ_ONLY, 0, store.dataSize);
+        }
+        return store;
+    }
+
+    /**
+     * Open a packed parse output for appending, the existing records are kept.
+     * The index is written on {@link #commit()}.
+     */
+    public static PackedInfoStore openWriter(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Map<String, long[]> index = exists(dir) ? readIndex(dir.resolve(INDEX_FILE)) : new LinkedHashMap<>();
+        PackedInfoStore store = new PackedInfoStore(dir, index);
+        store.dataSize = Files.exists(store.dataPath) ? Files.size(store.dataPath) : 0;
+        store.committedSize = store.dataSize;
+        store.appender = new BufferedOutputStream(Files.newOutputStream(store.dataPath,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16);
+        return store;
+    }
+
+    /**
+     * Open an empty packed parse output for writing, e.g. for a full parse, the existing records are dropped.
+     */
+    public static PackedInfoStore create(Path dir) throws IOException {
+        Files.deleteIfExists(dir.resolve(INDEX_FILE));
+        Files.deleteIfExists(dir.resolve(DATA_FILE));
+        return openWriter(dir);
+    }
+
+    public static String classKey(String fullClassName) {
+        return fullClassName;
+    }
+
+    public static String methodKey(String fullClassName, String methodSignature) {
+        return fullClassName + METHOD_SEPARATOR + methodSignature;
+    }
+
+    public synchronized void putClassInfo(ClassInfo classInfo) throws IOException {
+        append(classKey(classInfo.fullClassName), GSON.toJson(classInfo));
+    }
+
+    public synchronized void putMethodInfo(String fullClassName, MethodInfo methodInfo) throws IOException {
+        append(methodKey(fullClassName, methodInfo.methodSignature), GSON.toJson(methodInfo));
+    }
+
+    /**
+     * Append a record of any other kind, e.g. the symbol frames of the obfuscator.
+     */
+    public synchronized void put(String key, Object value) throws IOException {
+        append(key, GSON.toJson(value));
+    }
+
+    /**
+     * @return the record of the key, or {@code null} if there is none
+     */
+    public <T> T get(String key, Type type) throws IOException {
+        String json = read(key);
+        return json == null ? null : GSON.fromJson(json, type);
+    }
+
+    public ClassInfo getClassInfo(String fullClassName) throws IOException {
+        String json = read(classKey(fullClassName));
+        return json == null ? null : GSON.fromJson(json, ClassInfo.class);
+    }
+
+    public MethodInfo getMethodInfo(String fullClassName, String methodSignature) throws IOException {
+        String json = read(methodKey(fullClassName, methodSignature));
+        return json == null ? null : GSON.fromJson(json, MethodInfo.class);
+    }
+
+    /**
+     * Full class names of all classes in the store.
+     */
+    public synchronized List<String> getClassNames() {
+        List<String> names = new ArrayList<>();
+        for (String key : index.keySet()) {
+            if (!key.contains(METHOD_SEPARATOR)) {
+                names.add(key);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Drop the records of a class and its methods from the index, the data stays in the file until rewritten.
+     */
+    public synchronized void remove(String fullClassName) {
+        index.remove(classKey(fullClassName));
+        String prefix = fullClassName + METHOD_SEPARATOR;
+        index.keySet().removeIf(k -> k.startsWith(prefix));
+    }
+
+    /**
+     * Export the packed infos to the json layout, one json file per class and per method.
+     */
+    public void exportJson(Path outputDir, Gson gson) throws IOException {
+        for (String className : getClassNames()) {
+            ClassInfo classInfo = getClassInfo(className);
+            if (classInfo == null) {
+                continue;
+            }
+            Path classDir = outputDir.resolve(className.replace(".", File.separator));
+            Files.createDirectories(classDir);
+            Files.writeString(classDir.resolve("class.json"), gson.toJson(classInfo), StandardCharsets.UTF_8);
+            for (String mSig : classInfo.methodSigs.keySet()) {
+                MethodInfo methodInfo = getMethodInfo(className, mSig);
+                if (methodInfo == null) {
+                    continue;
+                }
+                Files.writeString(classDir.resolve(ClassParser.getFilePathBySig(mSig, classInfo)),
+                        gson.toJson(methodInfo), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private void append(String key, String json) throws IOException {
+        if (appender == null) {
+            throw new IllegalStateException("In PackedInfoStore.append: store is opened read-only");
+        }
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        appender.write(bytes);
+        index.put(key, new long[]{dataSize, bytes.length});
+        dataSize += bytes.length;
+    }
+
+    private String read(String key) throws IOException {
+        long[] entry;
+        FileChannel channel;
+        ByteBuffer mapped;
+        synchronized (this) {
+            entry = index.get(key);
+            channel = this.channel;
+            mapped = this.mapped;
+        }
+        if (entry == null) {
+            return null;
+        }
+        if (channel == null) {
+            throw new IllegalStateException("In PackedInfoStore.read: store is not opened for reading");
+        }
+        byte[] bytes = new byte[(int) entry[1]];
+        if (mapped != null) {
+            ByteBuffer view = mapped.duplicate();
+            view.position((int) entry[0]);
+            view.get(bytes);
+        } else {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long position = entry[0];
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, position);
+                if (n < 0) {
+                    throw new EOFException("In PackedInfoStore.read: truncated record for " + key);
+                }
+                position += n;
+            }
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void rollback() throws IOException {
+        if (committedSize == 0 || !Files.exists(indexPath)) {
+            Files.deleteIfExists(dataPath);
+            return;
+        }
+        try (FileChannel data = FileChannel.open(dataPath, StandardOpenOption.WRITE)) {
+            data.truncate(committedSize);
+        }
+    }
+
+    private static Map<String, long[]> readIndex(Path indexPath) throws IOException {
+        Map<String, long[]> index = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            int version = in.readInt();
+            if (version != INDEX_VERSION) {
+                throw new IOException("In PackedInfoStore.readIndex: unsupported index version " + version);
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                long offset = in.readLong();
+                long length = in.readInt();
+                index.put(key, new long[]{offset, length});
+            }
+        }
+        return index;
+    }
+
+    private void writeIndex() throws IOException {
+        Path tmp = indexPath.resolveSibling(INDEX_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(index.size());
+            for (Map.Entry<String, long[]> entry : index.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue()[0]);
+                out.writeInt((int) entry.getValue()[1]);
+            }
+        }
+        Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Write the appended records and the index, the writer cannot append anymore.
+     */
+    public synchronized void commit() throws IOException {
+        if (appender == null) {
+            throw new IllegalStateException("In PackedInfoStore.commit: store is not opened for writing");
+        }
+        appender.close();
+        appender = null;
+        if (getDeadBytes() > dataSize * MAX_DEAD_SHARE) {
+            compact();
+        }
+        writeIndex();
+        committedSize = dataSize;
+    }
+
+    /**
+     * Bytes of the data file not referred to by the index, left by replaced and removed records.
+     */
+    public synchronized long getDeadBytes() {
+        long live = 0;
+        for (long[] entry : index.values()) {
+            live += entry[1];
+        }
+        return dataSize - live;
+    }
+
+    /**
+     * Rewrite the data file with the live records in index order. The index on disk is deleted first,
+     * so an interrupted compaction leaves no store rather than an index over moved records.
+     */
+    private void compact() throws IOException {
+        Path tmp = dataPath.resolveSibling(DATA_FILE + ".tmp");
+        Map<String, long[]> compacted = new LinkedHashMap<>();
+        long position = 0;
+        try (FileChannel in = FileChannel.open(dataPath, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, long[]> entry : index.entrySet()) {
+                long offset = entry.getValue()[0];
+                long length = entry.getValue()[1];
+                long copied = 0;
+                while (copied < length) {
+                    copied += in.transferTo(offset + copied, length - copied, out);
+                }
+                compacted.put(entry.getKey(), new long[]{position, length});
+                position += length;
+            }
+        }
+        Files.deleteIfExists(indexPath);
+        Files.move(tmp, dataPath, StandardCopyOption.REPLACE_EXISTING);
+        index.clear();
+        index.putAll(compacted);
+        dataSize = position;
+    }
+
+    /**
+     * Close the store, the records appended since the last {@link #commit()} are dropped.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (appender != null) {
+            appender.close();
+            appender = null;
+            rollback();
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            mapped = null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package zju.cst.aces.parser;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared, read-only index over a json file holding one object of records keyed by class name.
+ *
+ * <P>
+ * On first use the json file is streamed, one record at a time, into a {@link PackedInfoStore} next to it,
+ * which is rebuilt only when the json file is newer. A lookup reads the record of the single key from the
+ * memory-mapped store and keeps the entry for the next lookups, missing keys included.
+ * Subclasses only map the records, the returned entries are shared between threads and must not be modified.
+ * </P>
+ * @param <R> type of the records in the json file and in the store
+ * @param <T> type of the entries returned by {@link #get(String)}
+ */
+public abstract class PackedJsonIndex<R, T> {
+    private static final String PACKED_SUFFIX = ".packed";
+
+    private final Path jsonPath;
+    private final Path packedDir;
+    private final Type recordType;
+    private final Map<String, Optional<T>> entries = new ConcurrentHashMap<>();
+    private PackedInfoStore store;
+
+    protected PackedJsonIndex(Path jsonPath, Type recordType) {
+        this.jsonPath = jsonPath;
+        this.packedDir = jsonPath.resolveSibling(jsonPath.getFileName() + PACKED_SUFFIX);
+        this.recordType = recordType;
+    }
+
+    /**
+     * The record written to the store for a record of the json file, the record itself by default.
+     */
+    protected R pack(R record) {
+        return record;
+    }
+
+    /**
+     * The entry of a record read from the store.
+     */
+    protected abstract T toEntry(String key, R record);
+
+    /**
+     * @return the entry of the key, or {@code null} if it has none
+     */
+    public T get(String key) {
+        Optional<T> entry = entries.get(key);
+        if (entry == null) {
+            entry = Optional.ofNullable(load(key));
+            Optional<T> existing = entries.putIfAbsent(key, entry);
+            entry = existing == null ? entry : existing;
+        }
+        return entry.orElse(null);
+    }
+
+    /**
+     * Drop the loaded entries, must be called after the json file is rewritten.
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+        close();
+        try {
+            Files.deleteIfExists(packedDir.resolve(PackedInfoStore.INDEX_FILE));
+        } catch (IOException e) {
+            throw new RuntimeException("In PackedJsonIndex.invalidate: " + e);
+        }
+    }
+
+    public synchronized void close() {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.close();
+        } catch (IOException e) {
+            throw new RuntimeException("In PackedJsonIndex.close: " + e);
+        }
+        store = null;
+    }
+
+    private T load(String key) {
+        try {
+            PackedInfoStore store = getStore();
+            if (store == null) {
+                return null;
+            }
+            R record = store.get(key, recordType);
+            return record == null ? null : toEntry(key, record);
+        } catch (IOException e) {
+            throw new RuntimeException("In PackedJsonIndex.get: " + e);
+        }
+    }
+
+    private synchronized PackedInfoStore getStore() throws IOException {
+        if (store == null) {
+            if (!Files.exists(jsonPath)) {
+                return null;
+            }
+            if (!PackedInfoStore.exists(packedDir) || isStale()) {
+                pack();
+            }
+            store = PackedInfoStore.openReader(packedDir);
+        }
+        return store;
+    }
+
+    private boolean isStale() throws IOException {
+        return Files.getLastModifiedTime(jsonPath).compareTo(
+                Files.getLastModifiedTime(packedDir.resolve(PackedInfoStore.INDEX_FILE))) > 0;
+    }
+
+    /**
+     * Stream the records of the json file into a new packed store.
+     */
+    private void pack() throws IOException {
+        Gson gson = new Gson();
+        try (Reader in = Files.newBufferedReader(jsonPath, StandardCharsets.UTF_8);
+             JsonReader reader = new JsonReader(in);
+             PackedInfoStore writer = PackedInfoStore.create(packedDir)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                    continue;
+                }
+                R record = gson.fromJson(reader, recordType);
+                writer.put(key, pack(record));
+            }
+            reader.endObject();
+            writer.commit();
+        }
+    }
+}
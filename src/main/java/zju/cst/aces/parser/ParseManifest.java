@@ -0,0 +1,156 @@
+package zju.cst.aces.parser;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Manifest of the last parse, used by {@link ProjectParser} to re-parse only the changed sources.
+ * For each source file it records the content hash, the declared classes, and the names it refers to,
+ * which are the dependency edges between source files.
+ */
+public class ParseManifest {
+
+    public static final String FILE_NAME = "parseManifest.json";
+
+    public boolean packed;
+    public Map<String, Entry> files = new TreeMap<>();
+
+    public static class Entry {
+        public String hash;
+        /** Full names of the declared classes, same as the values of the class name map. */
+        public List<String> classes = new ArrayList<>();
+        /** Simple names of the extended and implemented types. */
+        public List<String> supertypes = new ArrayList<>();
+        /** Simple names of all types and names referred to in the file. */
+        public List<String> references = new ArrayList<>();
+    }
+
+    /**
+     * Load the manifest of the last parse.
+     * @return {@code null} if there is no manifest or it cannot be read.
+     */
+    public static ParseManifest load(Path path, Gson gson) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            return gson.fromJson(Files.readString(path, StandardCharsets.UTF_8), ParseManifest.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public void save(Path path, Gson gson) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, gson.toJson(this), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Full names of the classes declared in the given source files.
+     */
+    public Set<String> getClasses(Collection<String> paths) {
+        Set<String> classes = new HashSet<>();
+        for (String path : paths) {
+            Entry entry = files.get(path);
+            if (entry != null) {
+                classes.addAll(entry.classes);
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Source files declaring a class with one of the given simple names.
+     */
+    public Set<String> getDeclaringFiles(Collection<String> simpleNames) {
+        Set<String> names = new HashSet<>(simpleNames);
+        Set<String> result = new HashSet<>();
+        files.forEach((path, entry) -> {
+            for (String fullClassName : entry.classes) {
+                if (names.contains(getSimpleName(fullClassName))) {
+                    result.add(path);
+                    break;
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Source files referring to one of the given classes by simple name.
+     */
+    public Set<String> getDependentFiles(Collection<String> fullClassNames) {
+        Set<String> names = new HashSet<>();
+        fullClassNames.forEach(c -> names.add(getSimpleName(c)));
+        Set<String> result = new HashSet<>();
+        files.forEach((path, entry) -> {
+            for (String reference : entry.references) {
+                if (names.contains(reference)) {
+                    result.add(path);
+                    break;
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Create the manifest entry of a parsed compilation unit.
+     */
+    public static Entry createEntry(CompilationUnit cu, String hash) {
+        Entry entry = new Entry();
+        entry.hash = hash;
+        String packageName = cu.getPackageDeclaration().isPresent() ?
+                cu.getPackageDeclaration().get().getNameAsString() + "." : "";
+        Set<String> supertypes = new TreeSet<>();
+        for (ClassOrInterfaceDeclaration classNode : cu.findAll(ClassOrInterfaceDeclaration.class)) {
+            entry.classes.add(packageName + classNode.getNameAsString());
+            classNode.getExtendedTypes().forEach(t -> supertypes.add(t.getNameAsString()));
+            classNode.getImplementedTypes().forEach(t -> supertypes.add(t.getNameAsString()));
+        }
+        Set<String> references = new TreeSet<>();
+        cu.findAll(ClassOrInterfaceType.class).forEach(t -> references.add(t.getNameAsString()));
+        cu.findAll(NameExpr.class).forEach(n -> references.add(n.getNameAsString()));
+        for (ImportDeclaration imp : cu.getImports()) {
+            if (!imp.isAsterisk()) {
+                references.add(getSimpleName(imp.getNameAsString()));
+            }
+        }
+        entry.supertypes.addAll(supertypes);
+        entry.references.addAll(references);
+        return entry;
+    }
+
+    /**
+     * SHA-256 of the file content.
+     */
+    public static String hash(Path file) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(Files.readAllBytes(file));
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("In ParseManifest.hash: " + e);
+        }
+    }
+
+    public static String getSimpleName(String fullClassName) {
+        return fullClassName.substring(fullClassName.lastIndexOf('.') + 1);
+    }
+}
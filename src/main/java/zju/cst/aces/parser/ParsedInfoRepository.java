@@ -0,0 +1,243 @@
+package zju.cst.aces.parser;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.dto.MethodInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared, thread-safe store of the parsed {@link ClassInfo} and {@link MethodInfo} under {@code parseOutput},
+ * either in the json layout or in the {@link PackedInfoStore} format.
+ * Each info is read and deserialized once and then kept in a bounded LRU cache,
+ * the least recently used entries are evicted when the cache exceeds {@code maxSize}.
+ * The returned objects are shared between threads and must be treated as read-only.
+ */
+public class ParsedInfoRepository {
+
+    public static final int DEFAULT_MAX_SIZE = 4096;
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    private final Path parseOutput;
+    private final Path classNameMapPath;
+    private final int maxSize;
+    private final Map<String, ClassInfo> classCache;
+    private final Map<String, MethodInfo> methodCache;
+    private volatile Map<String, List<String>> classNameMap;
+    private PackedInfoStore packedInfoStore;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    public ParsedInfoRepository(Path parseOutput, Path classNameMapPath, int maxSize) {
+        this.parseOutput = parseOutput;
+        this.classNameMapPath = classNameMapPath;
+        this.maxSize = maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE;
+        this.classCache = new LruCache<>(this.maxSize);
+        this.methodCache = new LruCache<>(this.maxSize);
+    }
+
+    /**
+     * Get the parsed class information by full class name.
+     * @return {@code null} if the class is not parsed.
+     */
+    public ClassInfo getClassInfo(String fullClassName) throws IOException {
+        synchronized (classCache) {
+            ClassInfo cached = classCache.get(fullClassName);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        ClassInfo info;
+        PackedInfoStore packed = getPackedInfoStore();
+        if (packed != null) {
+            info = packed.getClassInfo(fullClassName);
+        } else {
+            Path classInfoPath;
+            try {
+                classInfoPath = parseOutput.resolve(fullClassName.replace(".", File.separator)).resolve("class.json");
+            } catch (InvalidPathException e) {
+                return null;
+            }
+            if (!classInfoPath.toFile().exists()) {
+                return null;
+            }
+            info = GSON.fromJson(Files.readString(classInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+        }
+        loads.incrementAndGet();
+        if (info == null) {
+            return null;
+        }
+        synchronized (classCache) {
+            ClassInfo existing = classCache.putIfAbsent(fullClassName, info);
+            return existing == null ? info : existing;
+        }
+    }
+
+    /**
+     * Get the parsed method(constructor) information by method signature in the given class.
+     * @return {@code null} if the method is not parsed.
+     */
+    public MethodInfo getMethodInfo(ClassInfo info, String mSig) throws IOException {
+        if (info.methodSigs.get(mSig) == null) {
+            return null;
+        }
+        String key = PackedInfoStore.methodKey(info.fullClassName, mSig);
+        synchronized (methodCache) {
+            MethodInfo cached = methodCache.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        MethodInfo methodInfo;
+        PackedInfoStore packed = getPackedInfoStore();
+        if (packed != null) {
+            methodInfo = packed.getMethodInfo(info.fullClassName, mSig);
+        } else {
+            String packagePath = info.getPackageName()
+                    .replace("package ", "")
+                    .replace(".", File.separator)
+                    .replace(";", "");
+            Path methodInfoPath = parseOutput
+                    .resolve(packagePath)
+                    .resolve(info.className)
+                    .resolve(ClassParser.getFilePathBySig(mSig, info));
+            if (!methodInfoPath.toFile().exists()) {
+                return null;
+            }
+            methodInfo = GSON.fromJson(Files.readString(methodInfoPath, StandardCharsets.UTF_8), MethodInfo.class);
+        }
+        loads.incrementAndGet();
+        if (methodInfo == null) {
+            return null;
+        }
+        synchronized (methodCache) {
+            MethodInfo existing = methodCache.putIfAbsent(key, methodInfo);
+            return existing == null ? methodInfo : existing;
+        }
+    }
+
+    /**
+     * Get the map of simple class name to full class names exported by {@link ProjectParser}.
+     */
+    public Map<String, List<String>> getClassNameMap() throws IOException {
+        Map<String, List<String>> map = classNameMap;
+        if (map == null) {
+            synchronized (this) {
+                map = classNameMap;
+                if (map == null) {
+                    map = GSON.fromJson(Files.readString(classNameMapPath, StandardCharsets.UTF_8),
+                            new TypeToken<Map<String, List<String>>>(){}.getType());
+                    if (map == null) {
+                        map = new HashMap<>();
+                    }
+                    classNameMap = map;
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Lazily open the packed store if the parse output is in the packed format.
+     * @return {@code null} if the parse output is in the json layout.
+     */
+    private synchronized PackedInfoStore getPackedInfoStore() throws IOException {
+        if (packedInfoStore == null && PackedInfoStore.exists(parseOutput)) {
+            packedInfoStore = PackedInfoStore.openReader(parseOutput);
+        }
+        return packedInfoStore;
+    }
+
+    /**
+     * Drop all cached infos, must be called after the parse output is rewritten.
+     */
+    public void invalidateAll() {
+        synchronized (classCache) {
+            classCache.clear();
+        }
+        synchronized (methodCache) {
+            methodCache.clear();
+        }
+        classNameMap = null;
+        closePackedInfoStore();
+    }
+
+    /**
+     * Drop the cached infos of one class and its methods.
+     */
+    public void invalidate(String fullClassName) {
+        synchronized (classCache) {
+            classCache.remove(fullClassName);
+        }
+        String prefix = PackedInfoStore.methodKey(fullClassName, "");
+        synchronized (methodCache) {
+            methodCache.keySet().removeIf(k -> k.startsWith(prefix));
+        }
+        classNameMap = null;
+        closePackedInfoStore();
+    }
+
+    private synchronized void closePackedInfoStore() {
+        if (packedInfoStore == null) {
+            return;
+        }
+        try {
+            packedInfoStore.close();
+        } catch (IOException e) {
+            throw new RuntimeException("In ParsedInfoRepository.closePackedInfoStore: " + e);
+        }
+        packedInfoStore = null;
+    }
+
+    public int size() {
+        int size;
+        synchronized (classCache) {
+            size = classCache.size();
+        }
+        synchronized (methodCache) {
+            size += methodCache.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Path getParseOutput() {
+        return parseOutput;
+    }
+
+    private static class LruCache<K, V> extends LinkedHashMap<K, V> {
+        private final int maxSize;
+
+        LruCache(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
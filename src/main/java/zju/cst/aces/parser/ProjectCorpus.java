@@ -0,0 +1,69 @@
+package zju.cst.aces.parser;
+
+import zju.cst.aces.api.Logger;
+import zju.cst.aces.api.Project;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Source code of all java files of the project, read once per run, for the {@code project_full_code} prompt variable.
+ *
+ * <P>
+ * The files are concatenated in scan order, each followed by a line break, and the offsets of each file
+ * are kept by class name, so the code of the project without a class is copied from the corpus around its ranges.
+ * </P>
+ */
+public class ProjectCorpus {
+    private final String code;
+    /** Start and end offsets of the files of each class name, in corpus order. */
+    private final Map<String, List<int[]>> ranges = new HashMap<>();
+
+    public ProjectCorpus(Project project, Logger logger) {
+        StringBuilder sb = new StringBuilder();
+        for (String path : ProjectParser.scanSourceDirectory(project)) {
+            String className = path.substring(path.lastIndexOf(File.separator) + 1, path.lastIndexOf("."));
+            int start = sb.length();
+            try {
+                sb.append(Files.readString(Paths.get(path), StandardCharsets.UTF_8)).append("\n");
+            } catch (IOException e) {
+                logger.warn("Failed to append class code for " + className);
+                continue;
+            }
+            ranges.computeIfAbsent(className, k -> new ArrayList<>()).add(new int[]{start, sb.length()});
+        }
+        this.code = sb.toString();
+    }
+
+    /**
+     * @return the code of all files except the ones of the class
+     */
+    public String getCodeExcluding(String className) {
+        List<int[]> excluded = ranges.get(className);
+        if (excluded == null) {
+            return code;
+        }
+        int length = code.length();
+        for (int[] range : excluded) {
+            length -= range[1] - range[0];
+        }
+        StringBuilder sb = new StringBuilder(length);
+        int position = 0;
+        for (int[] range : excluded) {
+            sb.append(code, position, range[0]);
+            position = range[1];
+        }
+        return sb.append(code, position, code.length()).toString();
+    }
+
+    public int length() {
+        return code.length();
+    }
+}
@@ -14,6 +14,7 @@ import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.expr.Expression;
 import com.github.javaparser.resolution.UnsolvedSymbolException;
 import com.github.javaparser.resolution.types.ResolvedType;
+import com.google.gson.reflect.TypeToken;
 import org.apache.maven.shared.dependency.graph.DependencyNode;
 import slicing.graphs.CallGraph;
 import slicing.graphs.CallGraph.Edge;
@@ -35,7 +36,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 public class ProjectParser {
 
@@ -46,6 +52,8 @@ public class ProjectParser {
     public static Config config;
     public int classCount = 0;
     public int methodCount = 0;
+    private List<JavaParser> workerParsers;
+    private final Map<CompilationUnit, JavaParser> cuParsers = Collections.synchronizedMap(new IdentityHashMap<>());
 
     public ProjectParser(Config config) {
         this.srcFolderPath = Paths.get(config.getProject().getBasedir().getAbsolutePath(), "src", "main", "java");
@@ -56,6 +64,8 @@ public class ProjectParser {
 
     /**
      * Parse the project.
+     * If {@link Config#isEnableIncrementalParse()} and the manifest of the last parse exists,
+     * only the changed sources and the sources depending on them are re-parsed.
      */
     public void parse() {
         List<String> classPaths = scanSourceDirectory(config.getProject());
@@ -63,46 +73,419 @@ public class ProjectParser {
             config.getLogger().warn("No java file found in " + srcFolderPath);
             return;
         }
-        NodeList<CompilationUnit> cus = new NodeList<>();
+        ParseManifest previous = loadManifest();
+        if (previous != null) {
+            parseIncrementally(classPaths, previous);
+            return;
+        }
+        ParseManifest manifest = new ParseManifest();
+        Map<String, CompilationUnit> parsed = parseFiles(classPaths);
+        NodeList<CompilationUnit> cus = new NodeList<>(parsed.values());
+        if (config.isEnableIncrementalParse()) {
+            parsed.forEach((classPath, cu) -> manifest.files.put(classPath, createManifestEntry(classPath, cu)));
+        }
+        MethodExampleMap methodExampleMap = createMethodExampleMap(cus);
+
+        PackedInfoStore packedInfoStore = openPackedInfoStore(true);
+        for (var cu : extractClasses(cus, packedInfoStore)) {
+            addClassMap(cu);
+        }
+        closePackedInfoStore(packedInfoStore);
+        exportClassMapping();
+//        exportOCC();
+        exportMethodExampleMap(methodExampleMap);
+        exportJson(config.getClassNameMapPath(), classNameMap);
+        if (config.isEnableIncrementalParse()) {
+            saveManifest(manifest);
+        }
+        config.getParsedInfoRepository().invalidateAll();
+        config.getLogger().info("\nParsed classes: " + classCount + "\nParsed methods: " + methodCount);
+    }
+
+    /**
+     * Whether an existing parse output can be updated by {@link #parse()} instead of being skipped.
+     */
+    public boolean canParseIncrementally() {
+        return loadManifest() != null;
+    }
+
+    /**
+     * Re-parse the changed sources, the sources referring to their classes and the sources declaring their super types,
+     * and re-emit only the infos and method examples of the re-parsed classes.
+     */
+    private void parseIncrementally(List<String> classPaths, ParseManifest previous) {
+        Map<String, String> hashes = new HashMap<>();
+        Set<String> changed = new HashSet<>();
         for (String classPath : classPaths) {
-            File file = new File(classPath);
-            try {
-                ParseResult<CompilationUnit> parseResult = parser.parse(file);
-                CompilationUnit cu = parseResult.getResult().orElseThrow();
-                cus.add(cu);
-            } catch (Exception e) {
-                throw new RuntimeException("In ProjectParser.parse: " + e);
+            String hash = hashFile(classPath);
+            hashes.put(classPath, hash);
+            ParseManifest.Entry entry = previous.files.get(classPath);
+            if (entry == null || !hash.equals(entry.hash)) {
+                changed.add(classPath);
             }
         }
-        MethodExampleMap methodExampleMap = createMethodExampleMap(cus);
+        Set<String> removed = new HashSet<>(previous.files.keySet());
+        removed.removeAll(hashes.keySet());
+        if (changed.isEmpty() && removed.isEmpty()) {
+            config.getLogger().info("No source changed since the last parse, skip parsing!");
+            return;
+        }
 
-        for (var cu : cus) {
-            try {
-                Path output = outputPath;
-                String packageName = "";
-                if (cu.getPackageDeclaration().isPresent()) {
-                    packageName = cu.getPackageDeclaration().get().getNameAsString();
-                    output = outputPath.resolve(packageName.replace(".", File.separator));
-                }
-                ClassParser classParser = new ClassParser(parser, config.getProject(), output,
-                        config.getLogger(),  config.getGSON(), config.sharedInteger, config.classMapping, config.ocm);
-                int classNum = classParser.extractClass(cu);
+        ParseManifest manifest = new ParseManifest();
+        manifest.packed = config.isEnablePackedParseOutput();
+        manifest.files.putAll(previous.files);
+        removed.forEach(manifest.files::remove);
+        Map<String, CompilationUnit> parsed = parseFiles(changed);
+        parsed.forEach((classPath, cu) -> manifest.files.put(classPath, ParseManifest.createEntry(cu, hashes.get(classPath))));
 
-                if (classNum == 0) {
-                    continue;
+        // classes removed, changed or added, and the super types whose subclasses may have changed
+        Set<String> staleFiles = new HashSet<>(changed);
+        staleFiles.addAll(removed);
+        Set<String> staleClasses = previous.getClasses(staleFiles);
+        staleClasses.addAll(manifest.getClasses(changed));
+        Set<String> supertypes = new HashSet<>();
+        for (String classPath : staleFiles) {
+            for (ParseManifest m : Arrays.asList(previous, manifest)) {
+                ParseManifest.Entry entry = m.files.get(classPath);
+                if (entry != null) {
+                    supertypes.addAll(entry.supertypes);
                 }
-                addClassMap(cu);
-                classCount += classNum;
-                methodCount += classParser.methodCount;
-            } catch (Exception e) {
-                throw new RuntimeException("In ProjectParser.parse: " + e);
             }
         }
+        Set<String> reparse = new TreeSet<>(changed);
+        reparse.addAll(manifest.getDependentFiles(staleClasses));
+        reparse.addAll(manifest.getDeclaringFiles(supertypes));
+        Set<String> dependents = new TreeSet<>(reparse);
+        dependents.removeAll(parsed.keySet());
+        parseFiles(dependents).forEach((classPath, cu) -> {
+            parsed.put(classPath, cu);
+            manifest.files.put(classPath, ParseManifest.createEntry(cu, hashes.get(classPath)));
+        });
+        Set<String> reparsedClasses = manifest.getClasses(reparse);
+        Set<String> outdatedClasses = previous.getClasses(reparse);
+        outdatedClasses.addAll(previous.getClasses(removed));
+        Set<String> deletedClasses = new HashSet<>(outdatedClasses);
+        deletedClasses.removeAll(reparsedClasses);
+
+        // the call graph covers the re-parsed sources and the sources declaring the types they refer to
+        Set<String> references = new HashSet<>();
+        reparse.forEach(classPath -> references.addAll(manifest.files.get(classPath).references));
+        Set<String> graphFiles = new TreeSet<>(reparse);
+        graphFiles.addAll(manifest.getDeclaringFiles(references));
+        Set<String> referenced = new TreeSet<>(graphFiles);
+        referenced.removeAll(parsed.keySet());
+        parsed.putAll(parseFiles(referenced));
+        NodeList<CompilationUnit> graphCus = new NodeList<>();
+        for (String classPath : graphFiles) {
+            graphCus.add(parsed.get(classPath));
+        }
+        MethodExampleMap methodExampleMap = loadMethodExampleMap();
+        Set<String> callerClasses = new HashSet<>(outdatedClasses);
+        callerClasses.addAll(reparsedClasses);
+        methodExampleMap.removeCallerClasses(callerClasses);
+        methodExampleMap.removeMethodsOf(deletedClasses);
+        methodExampleMap.addAll(createMethodExampleMap(graphCus, reparsedClasses));
+
+        loadClassMapping(outdatedClasses);
+        PackedInfoStore packedInfoStore = openPackedInfoStore(false);
+        removeParsedInfo(outdatedClasses, packedInfoStore);
+        List<CompilationUnit> reparsedCus = new ArrayList<>();
+        reparse.forEach(classPath -> reparsedCus.add(parsed.get(classPath)));
+        extractClasses(reparsedCus, packedInfoStore);
+        closePackedInfoStore(packedInfoStore);
+        manifest.files.values().forEach(entry -> entry.classes.forEach(this::addClassMap));
         exportClassMapping();
-//        exportOCC();
         exportMethodExampleMap(methodExampleMap);
         exportJson(config.getClassNameMapPath(), classNameMap);
-        config.getLogger().info("\nParsed classes: " + classCount + "\nParsed methods: " + methodCount);
+        saveManifest(manifest);
+        config.getParsedInfoRepository().invalidateAll();
+        config.getLogger().info("\nRe-parsed files: " + reparse.size() + " / " + classPaths.size()
+                + "\nParsed classes: " + classCount + "\nParsed methods: " + methodCount);
+    }
+
+    /**
+     * Parse the source files, in parallel when {@link Config#getParseThreads()} is greater than 1.
+     * @return the compilation units in the order of the given paths
+     */
+    private Map<String, CompilationUnit> parseFiles(Collection<String> classPaths) {
+        List<String> paths = new ArrayList<>(classPaths);
+        CompilationUnit[] cus = new CompilationUnit[paths.size()];
+        List<JavaParser> parsers = getWorkerParsers();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < parsers.size(); i++) {
+            int worker = i;
+            tasks.add(() -> {
+                for (int j = worker; j < paths.size(); j += parsers.size()) {
+                    cus[j] = parseFile(paths.get(j), parsers.get(worker));
+                }
+                return null;
+            });
+        }
+        runTasks(tasks);
+        Map<String, CompilationUnit> parsed = new LinkedHashMap<>();
+        for (int i = 0; i < cus.length; i++) {
+            parsed.put(paths.get(i), cus[i]);
+        }
+        return parsed;
+    }
+
+    private CompilationUnit parseFile(String classPath, JavaParser javaParser) {
+        File file = new File(classPath);
+        try {
+            ParseResult<CompilationUnit> parseResult = javaParser.parse(file);
+            CompilationUnit cu = parseResult.getResult().orElseThrow();
+            cuParsers.put(cu, javaParser);
+            return cu;
+        } catch (Exception e) {
+            throw new RuntimeException("In ProjectParser.parse: " + e);
+        }
+    }
+
+    /**
+     * Extract the classes of the compilation units, each compilation unit is extracted by the worker that parsed it,
+     * as symbols are resolved with the symbol solver of its parser.
+     * @return the compilation units containing at least one class
+     */
+    private List<CompilationUnit> extractClasses(List<CompilationUnit> cus, PackedInfoStore packedInfoStore) {
+        Map<JavaParser, List<CompilationUnit>> groups = new LinkedHashMap<>();
+        for (CompilationUnit cu : cus) {
+            groups.computeIfAbsent(cuParsers.getOrDefault(cu, parser), k -> new ArrayList<>()).add(cu);
+        }
+        Set<CompilationUnit> extracted = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        List<Callable<Void>> tasks = new ArrayList<>();
+        groups.forEach((javaParser, group) -> tasks.add(() -> {
+            for (CompilationUnit cu : group) {
+                if (extractClass(cu, javaParser, packedInfoStore) > 0) {
+                    extracted.add(cu);
+                }
+            }
+            return null;
+        }));
+        runTasks(tasks);
+        List<CompilationUnit> result = new ArrayList<>();
+        for (CompilationUnit cu : cus) {
+            if (extracted.contains(cu)) {
+                result.add(cu);
+            }
+        }
+        return result;
+    }
+
+    private int extractClass(CompilationUnit cu, JavaParser javaParser, PackedInfoStore packedInfoStore) {
+        try {
+            Path output = outputPath;
+            String packageName = "";
+            if (cu.getPackageDeclaration().isPresent()) {
+                packageName = cu.getPackageDeclaration().get().getNameAsString();
+                output = outputPath.resolve(packageName.replace(".", File.separator));
+            }
+            ClassParser classParser = new ClassParser(javaParser, config.getProject(), output,
+                    config.getLogger(),  config.getGSON(), config.sharedInteger, config.classMapping, config.ocm);
+            classParser.setPackedInfoStore(packedInfoStore);
+            int classNum = classParser.extractClass(cu);
+
+            synchronized (this) {
+                classCount += classNum;
+                methodCount += classParser.methodCount;
+            }
+            return classNum;
+        } catch (Exception e) {
+            throw new RuntimeException("In ProjectParser.parse: " + e);
+        }
+    }
+
+    /**
+     * One parser per parse worker, the first one is the parser of the config.
+     */
+    private List<JavaParser> getWorkerParsers() {
+        if (workerParsers == null) {
+            workerParsers = new ArrayList<>();
+            workerParsers.add(parser);
+            for (int i = 1; i < config.getParseThreads(); i++) {
+                workerParsers.add(config.createParser());
+            }
+        }
+        return workerParsers;
+    }
+
+    /**
+     * Run the tasks in a fork-join pool of {@link Config#getParseThreads()} threads, or in the current thread.
+     */
+    private void runTasks(List<Callable<Void>> tasks) {
+        if (config.getParseThreads() <= 1 || tasks.size() <= 1) {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException("In ProjectParser.runTasks: " + e);
+                }
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(config.getParseThreads());
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("In ProjectParser.runTasks: " + e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("In ProjectParser.runTasks: " + e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Path getManifestPath() {
+        return config.tmpOutput.resolve(ParseManifest.FILE_NAME);
+    }
+
+    /**
+     * Load the manifest of the last parse if the parse output can be updated incrementally.
+     * @return {@code null} if a full parse is required.
+     */
+    private ParseManifest loadManifest() {
+        if (!config.isEnableIncrementalParse() || !Files.exists(outputPath)) {
+            return null;
+        }
+        ParseManifest manifest = ParseManifest.load(getManifestPath(), config.getGSON());
+        if (manifest == null || manifest.packed != config.isEnablePackedParseOutput()) {
+            return null;
+        }
+        // e.g. a compaction of the packed store was interrupted
+        if (manifest.packed && !PackedInfoStore.exists(outputPath)) {
+            return null;
+        }
+        return manifest;
+    }
+
+    private void saveManifest(ParseManifest manifest) {
+        manifest.packed = config.isEnablePackedParseOutput();
+        try {
+            manifest.save(getManifestPath(), config.getGSON());
+        } catch (IOException e) {
+            throw new RuntimeException("In ProjectParser.saveManifest: " + e);
+        }
+    }
+
+    private ParseManifest.Entry createManifestEntry(String classPath, CompilationUnit cu) {
+        return ParseManifest.createEntry(cu, hashFile(classPath));
+    }
+
+    private String hashFile(String classPath) {
+        try {
+            return ParseManifest.hash(Paths.get(classPath));
+        } catch (IOException e) {
+            throw new RuntimeException("In ProjectParser.hashFile: " + e);
+        }
+    }
+
+    private MethodExampleMap loadMethodExampleMap() {
+        Path path = config.tmpOutput.resolve("methodExampleCode.json");
+        if (!Files.exists(path)) {
+            return new MethodExampleMap();
+        }
+        try {
+            return MethodExampleMap.fromJson(Files.readString(path, StandardCharsets.UTF_8), config.getGSON());
+        } catch (IOException e) {
+            throw new RuntimeException("In ProjectParser.loadMethodExampleMap: " + e);
+        }
+    }
+
+    /**
+     * Load the class mapping of the last parse without the outdated classes,
+     * new classes get indexes after the existing ones.
+     */
+    private void loadClassMapping(Set<String> outdatedClasses) {
+        Path path = config.tmpOutput.resolve("classMapping.json");
+        if (!Files.exists(path)) {
+            return;
+        }
+        Map<String, Map<String, String>> classMapping;
+        try {
+            classMapping = config.getGSON().fromJson(Files.readString(path, StandardCharsets.UTF_8),
+                    new TypeToken<Map<String, Map<String, String>>>(){}.getType());
+        } catch (IOException e) {
+            throw new RuntimeException("In ProjectParser.loadClassMapping: " + e);
+        }
+        if (classMapping == null) {
+            return;
+        }
+        classMapping.entrySet().removeIf(entry -> {
+            String packageName = entry.getValue().get("packageName");
+            String className = entry.getValue().get("className");
+            String fullClassName = packageName == null || packageName.isEmpty() ? className : packageName + "." + className;
+            return outdatedClasses.contains(fullClassName);
+        });
+        int maxIndex = -1;
+        for (String key : classMapping.keySet()) {
+            try {
+                maxIndex = Math.max(maxIndex, Integer.parseInt(key.replace("class", "")));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        config.classMapping.clear();
+        config.classMapping.putAll(classMapping);
+        int nextIndex = maxIndex + 1;
+        config.sharedInteger.updateAndGet(i -> Math.max(i, nextIndex));
+    }
+
+    /**
+     * Remove the parsed infos of the outdated classes, from the packed store and the json layout.
+     */
+    private void removeParsedInfo(Set<String> fullClassNames, PackedInfoStore packedInfoStore) {
+        for (String fullClassName : fullClassNames) {
+            if (packedInfoStore != null) {
+                packedInfoStore.remove(fullClassName);
+                if (!config.isEnableJsonParseExport()) {
+                    continue;
+                }
+            }
+            Path classOutputDir = outputPath.resolve(fullClassName.replace(".", File.separator));
+            if (!Files.exists(classOutputDir)) {
+                continue;
+            }
+            try (Stream<Path> paths = Files.walk(classOutputDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            } catch (IOException e) {
+                throw new RuntimeException("In ProjectParser.removeParsedInfo: " + e);
+            }
+        }
+    }
+
+    /**
+     * Open the packed store when {@link Config#isEnablePackedParseOutput()}, otherwise infos are exported as json files.
+     * @param full whether all classes are parsed again, the records of the last parse are then dropped
+     */
+    private PackedInfoStore openPackedInfoStore(boolean full) {
+        if (!config.isEnablePackedParseOutput()) {
+            return null;
+        }
+        try {
+            return full ? PackedInfoStore.create(outputPath) : PackedInfoStore.openWriter(outputPath);
+        } catch (IOException e) {
+            throw new RuntimeException("In ProjectParser.openPackedInfoStore: " + e);
+        }
+    }
+
+    private void closePackedInfoStore(PackedInfoStore packedInfoStore) {
+        if (packedInfoStore == null) {
+            return;
+        }
+        try {
+            packedInfoStore.commit();
+            packedInfoStore.close();
+            if (config.isEnableJsonParseExport()) {
+                try (PackedInfoStore reader = PackedInfoStore.openReader(outputPath)) {
+                    reader.exportJson(outputPath, config.getGSON());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In ProjectParser.closePackedInfoStore: " + e);
+        }
     }
 
     private SDG createSDG(NodeList<CompilationUnit> cus) {
@@ -112,6 +495,13 @@ public class ProjectParser {
     }
 
     private MethodExampleMap createMethodExampleMap(NodeList<CompilationUnit> cus) {
+        return createMethodExampleMap(cus, null);
+    }
+
+    /**
+     * @param callerClasses only the examples found in these classes are collected, all if {@code null}
+     */
+    private MethodExampleMap createMethodExampleMap(NodeList<CompilationUnit> cus, Set<String> callerClasses) {
         config.getLogger().info("Starting to create method example map...");
         MethodExampleMap methodExampleMap = new MethodExampleMap();
         SDG sdg = createSDG(cus);
@@ -137,6 +527,9 @@ public class ProjectParser {
                             CallableDeclaration<?> caller = edge.getSource();
                             CompilationUnit callerCompilationUnit = findClassByCallable(caller);
                             String callerClassFullName = callerCompilationUnit.getType(0).getFullyQualifiedName().get();
+                            if (callerClasses != null && !callerClasses.contains(callerClassFullName)) {
+                                return;
+                            }
 
                             if (!arguments.isEmpty()) {
                                 var sc = new MultiVariableCriterion(callerClassFullName, callSiteLine, arguments);
@@ -278,6 +671,10 @@ public class ProjectParser {
         });
     }
 
+    private void addClassMap(String fullClassName) {
+        classNameMap.computeIfAbsent(ParseManifest.getSimpleName(fullClassName), k -> new HashSet<>()).add(fullClassName);
+    }
+
     public static void exportJson(Path path, Object obj) {
         if (!Files.exists(path.getParent())) {
             try {
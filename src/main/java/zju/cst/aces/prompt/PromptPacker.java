@@ -0,0 +1,126 @@
+package zju.cst.aces.prompt;
+
+import java.util.*;
+
+/**
+ * Select the data model entries to keep in a prompt within a token budget.
+ * Each entry has a token cost and a priority. Higher priorities are kept first, the entries of
+ * a listed map share the priority of their key, and each priority fills the budget left by the
+ * higher ones with as many tokens as possible (0/1 knapsack).
+ */
+public class PromptPacker {
+
+    public static final int DEFAULT_PRIORITY = 50;
+    /** Default priorities of the template keys, a higher priority is kept first. */
+    public static final Map<String, Integer> DEFAULT_PRIORITIES = new HashMap<>();
+    /** Capacities above this are scaled down, so the table stays small for long contexts. */
+    private static final int MAX_CAPACITY_STEPS = 4096;
+
+    static {
+        DEFAULT_PRIORITIES.put("method_sig", 100);
+        DEFAULT_PRIORITIES.put("class_name", 100);
+        DEFAULT_PRIORITIES.put("unit_test", 100);
+        DEFAULT_PRIORITIES.put("full_fm", 90);
+        DEFAULT_PRIORITIES.put("error_message", 80);
+        DEFAULT_PRIORITIES.put("m_deps", 60);
+        DEFAULT_PRIORITIES.put("c_deps", 40);
+        DEFAULT_PRIORITIES.put("other_method_sigs", 20);
+    }
+
+    public static class Item {
+        final String key;
+        final String entryKey;
+        final int tokens;
+        final int priority;
+
+        /**
+         * @param key the data model key
+         * @param entryKey the map entry of the data model value, {@code null} for the whole value
+         */
+        public Item(String key, String entryKey, int tokens, int priority) {
+            this.key = key;
+            this.entryKey = entryKey;
+            this.tokens = tokens;
+            this.priority = priority;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getEntryKey() {
+            return entryKey;
+        }
+
+        public int getTokens() {
+            return tokens;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+    }
+
+    /**
+     * Fill the capacity tier by tier, from the highest priority down, so an item is never dropped
+     * for items of a lower priority, however many they are.
+     * @return the items to keep, their total tokens do not exceed the capacity
+     */
+    public static List<Item> select(List<Item> items, int capacity) {
+        List<Item> selected = new ArrayList<>();
+        if (capacity <= 0 || items.isEmpty()) {
+            return selected;
+        }
+        TreeMap<Integer, List<Item>> tiers = new TreeMap<>(Comparator.reverseOrder());
+        for (Item item : items) {
+            tiers.computeIfAbsent(item.priority, k -> new ArrayList<>()).add(item);
+        }
+        int remaining = capacity;
+        for (List<Item> tier : tiers.values()) {
+            for (Item item : selectTier(tier, remaining)) {
+                selected.add(item);
+                remaining -= item.tokens;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Items of the same priority keeping the most tokens within the capacity (0/1 knapsack),
+     * ties are broken by keeping more items.
+     */
+    private static List<Item> selectTier(List<Item> items, int capacity) {
+        List<Item> selected = new ArrayList<>();
+        if (capacity < 0) {
+            return selected;
+        }
+        int scale = Math.max(1, (capacity + MAX_CAPACITY_STEPS - 1) / MAX_CAPACITY_STEPS);
+        int steps = capacity / scale;
+        int n = items.size();
+        int[] weights = new int[n];
+        for (int i = 0; i < n; i++) {
+            // round up, the scaled selection never exceeds the capacity
+            weights[i] = (items.get(i).tokens + scale - 1) / scale;
+        }
+        long[] best = new long[steps + 1];
+        boolean[][] keep = new boolean[n][steps + 1];
+        for (int i = 0; i < n; i++) {
+            long value = (long) items.get(i).tokens * (n + 1L) + 1;
+            for (int c = steps; c >= weights[i]; c--) {
+                long candidate = best[c - weights[i]] + value;
+                if (candidate > best[c]) {
+                    best[c] = candidate;
+                    keep[i][c] = true;
+                }
+            }
+        }
+        int c = steps;
+        for (int i = n - 1; i >= 0; i--) {
+            if (keep[i][c]) {
+                selected.add(items.get(i));
+                c -= weights[i];
+            }
+        }
+        return selected;
+    }
+}
@@ -6,23 +6,18 @@ import com.google.gson.GsonBuilder;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
-import zju.cst.aces.api.Task;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.ClassInfo;
-import zju.cst.aces.dto.ExampleUsage;
 import zju.cst.aces.dto.MethodInfo;
 import zju.cst.aces.dto.PromptInfo;
-import zju.cst.aces.parser.ProjectParser;
 import zju.cst.aces.runner.AbstractRunner;
+import zju.cst.aces.util.TokenCounter;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,6 +31,11 @@ public class PromptTemplate {
 
     public static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
     public static final String CONFIG_FILE = "config.properties";
+    private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\$\\{([a-zA-Z_][\\w]*)\\}");
+    private static final Map<String, Configuration> CONFIGURATIONS = new ConcurrentHashMap<>();
+    private static final Map<Template, TemplateVariables> TEMPLATE_VARIABLES = new WeakHashMap<>();
+    private static final Pattern LIST_PATTERN = Pattern.compile("<#list\\s+([a-zA-Z_][\\w]*)\\?keys");
+    private static final String FULL_PROJECT_CODE = "project_full_code";
     public String TEMPLATE_INIT = "";
     public String TEMPLATE_EXTRA = "";
     public String TEMPLATE_REPAIR = "";
@@ -44,6 +44,8 @@ public class PromptTemplate {
     public Path promptPath;
     public int maxPromptTokens;
     public Config config;
+    /** Class of the data model, the project code without it is computed only for the templates that use it. */
+    private String fullProjectCodeClass;
 
     public PromptTemplate(Config config, Properties properties, Path promptPath, int maxPromptTokens) {
         this.config = config;
@@ -58,58 +60,216 @@ public class PromptTemplate {
     /**
      * Load the prompt word template and use regular expressions
      * to generate a key list that matches the key information of the target class.
-     * If the generated prompt word text exceeds maxtoken,
-     * extract the key from the key list from back to front and remove the value of the key in the {@code datamodel}.
+     * If the generated prompt word text exceeds maxtoken, the values of these keys, the entries of
+     * the listed maps and the static text of the template are counted once, and {@link PromptPacker}
+     * selects the ones to keep within the budget by priority. The values that are not selected are
+     * removed from the {@code datamodel} and the prompt is rendered again.
      * @param templateFileName prompt word template file name
      * @return prompt word text
      * @throws IOException if an input or output exception occurred
      * @throws TemplateException if the template cannot be processed correctly
      */
     public String renderTemplate(String templateFileName) throws IOException, TemplateException{
-        Configuration configuration = new Configuration(Configuration.VERSION_2_3_30);
+        Template template = getConfiguration(this.promptPath).getTemplate(templateFileName);
+        TemplateVariables variables = getVariables(template);
+        List<String> matches = variables.matches;
+        Map<String, Integer> occurrences = variables.occurrences;
+        List<String> listedMaps = variables.listedMaps;
+        if (variables.usesFullProjectCode && fullProjectCodeClass != null && !dataModel.containsKey(FULL_PROJECT_CODE)) {
+            dataModel.put(FULL_PROJECT_CODE, getFullProjectCode(fullProjectCodeClass, config));
+        }
 
-        if (this.promptPath == null) {
-            configuration.setClassForTemplateLoading(PromptTemplate.class, "/prompt");
-        } else {
-            configuration.setDirectoryForTemplateLoading(this.promptPath.toFile());
+        // adaptive foal context
+        TokenCounter counter = TokenCounter.of(config == null ? null : config.getModel());
+        String generatedText = render(template);
+        int tokens = counter.countUncached(generatedText);
+        if (tokens <= this.maxPromptTokens) {
+            return generatedText;
+        }
+        List<PromptPacker.Item> items = createPackingItems(matches, occurrences, listedMaps, counter);
+
+        // the static text of the template, without any packed value or listed entry
+        Map<String, Object> values = new HashMap<>(dataModel);
+        applySelection(items, Collections.emptyList());
+        int staticTokens = counter.countUncached(render(template));
+        dataModel.putAll(values);
+        items = addSeparatorTokens(items, tokens - staticTokens);
+
+        List<PromptPacker.Item> selected = PromptPacker.select(items, this.maxPromptTokens - staticTokens);
+        applySelection(items, selected);
+        generatedText = render(template);
+        int overflow = counter.countUncached(generatedText) - this.maxPromptTokens;
+        if (overflow <= 0 || selected.isEmpty()) {
+            return generatedText;
+        }
+        // the estimate is conservative, in the rare case it is not, drop the least important
+        // selected items covering the overflow and render once more
+        selected.sort(Comparator.comparingInt(PromptPacker.Item::getPriority).reversed());
+        while (overflow > 0 && !selected.isEmpty()) {
+            overflow -= selected.remove(selected.size() - 1).getTokens();
+        }
+        applySelection(items, selected);
+        return render(template);
+    }
+
+    /**
+     * Add the tokens of the text around the packed values to their costs, so the costs of the selected
+     * items and the static text never underestimate the rendered prompt.
+     * The text repeated for each entry of a listed map is shared by the entries, and each item gets
+     * one more token for the merges at its boundaries.
+     * @param packedTokens tokens of the full prompt minus those of the static text
+     */
+    private static List<PromptPacker.Item> addSeparatorTokens(List<PromptPacker.Item> items, int packedTokens) {
+        int entries = 0;
+        int separatorTokens = packedTokens;
+        for (PromptPacker.Item item : items) {
+            separatorTokens -= item.getTokens();
+            if (item.getEntryKey() != null) {
+                entries++;
+            }
+        }
+        // without listed entries, the difference comes from the boundaries of the values
+        int sharing = entries == 0 ? items.size() : entries;
+        int shareTokens = sharing == 0 ? 0 : (Math.max(0, separatorTokens) + sharing - 1) / sharing;
+        List<PromptPacker.Item> costed = new ArrayList<>(items.size());
+        for (PromptPacker.Item item : items) {
+            boolean sharesSeparators = entries == 0 || item.getEntryKey() != null;
+            int tokens = item.getTokens() + 1 + (sharesSeparators ? shareTokens : 0);
+            costed.add(new PromptPacker.Item(item.getKey(), item.getEntryKey(), tokens, item.getPriority()));
+        }
+        return costed;
+    }
+
+    /**
+     * Packing items of the data model: each value referred to by {@code ${key}}, and each entry
+     * of the maps listed by {@code <#list key?keys ...>}.
+     */
+    private List<PromptPacker.Item> createPackingItems(List<String> matches, Map<String, Integer> occurrences,
+                                                       List<String> listedMaps, TokenCounter counter) {
+        List<PromptPacker.Item> items = new ArrayList<>();
+        for (String key : matches) {
+            Object value = dataModel.get(key);
+            if (value instanceof String || value instanceof List || value instanceof Map) {
+                items.add(new PromptPacker.Item(key, null,
+                        counter.countValue(value) * occurrences.getOrDefault(key, 1), getPriority(key)));
+            }
+        }
+        for (String key : listedMaps) {
+            if (matches.contains(key) || !(dataModel.get(key) instanceof Map)) {
+                continue;
+            }
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) dataModel.get(key)).entrySet()) {
+                items.add(new PromptPacker.Item(key, String.valueOf(entry.getKey()),
+                        counter.countValue(entry.getKey()) + counter.countValue(entry.getValue()), getPriority(key)));
+            }
         }
+        return items;
+    }
 
-        configuration.setDefaultEncoding("utf-8");
-        Template template = configuration.getTemplate(templateFileName);
+    /**
+     * Blank the values and remove the map entries that are not selected.
+     */
+    private void applySelection(List<PromptPacker.Item> items, List<PromptPacker.Item> selected) {
+        Map<String, Map<Object, Object>> filteredMaps = new HashMap<>();
+        for (PromptPacker.Item item : items) {
+            if (selected.contains(item)) {
+                continue;
+            }
+            Object value = dataModel.get(item.getKey());
+            if (item.getEntryKey() != null) {
+                Map<Object, Object> filtered = filteredMaps.computeIfAbsent(item.getKey(),
+                        k -> new LinkedHashMap<>((Map<?, ?>) value));
+                filtered.keySet().removeIf(k -> String.valueOf(k).equals(item.getEntryKey()));
+            } else if (value instanceof String) {
+                dataModel.put(item.getKey(), "");
+            } else if (value instanceof List) {
+                dataModel.put(item.getKey(), new ArrayList<String>());
+            } else if (value instanceof Map) {
+                dataModel.put(item.getKey(), new HashMap<String, String>());
+            }
+        }
+        dataModel.putAll(filteredMaps);
+    }
 
-        Pattern pattern = Pattern.compile("\\$\\{([a-zA-Z_][\\w]*)\\}");
-        Matcher matcher = pattern.matcher(template.toString());
-        List<String> matches = new ArrayList<>();
-        while (matcher.find()) {
-            String e = matcher.group(1);
-            if (!matches.contains(e)) {
-                matches.add(e);
+    /**
+     * Priority of a data model key, from {@code PROMPT_PRIORITY_<key>} in the properties if present,
+     * otherwise from {@link PromptPacker#DEFAULT_PRIORITIES}.
+     */
+    private int getPriority(String key) {
+        String value = properties == null ? null : properties.getProperty("PROMPT_PRIORITY_" + key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException ignored) {
             }
         }
+        return PromptPacker.DEFAULT_PRIORITIES.getOrDefault(key, PromptPacker.DEFAULT_PRIORITY);
+    }
 
-        String generatedText;
-        // adaptive foal context
-        do {
-            StringWriter writer = new StringWriter();
-            template.process(dataModel, writer);
-            generatedText = writer.toString();
-            if (matches.size() > 0) {
-                String key = matches.get(matches.size()-1);
-                if (dataModel.containsKey(key)) {
-                    if (dataModel.get(key) instanceof String) {
-                        dataModel.put(key, "");
-                    } else if (dataModel.get(key) instanceof List) {
-                        dataModel.put(key, new ArrayList<String>());
-                    } else if (dataModel.get(key) instanceof Map) {
-                        dataModel.put(key, new HashMap<String, String>());
-                    } else {
-                        break;
-                    }
+    /**
+     * Get the FreeMarker configuration of the prompt path, shared by all prompt templates.
+     * Loaded templates are cached by the configuration.
+     */
+    private static Configuration getConfiguration(Path promptPath) {
+        String key = promptPath == null ? "" : promptPath.toAbsolutePath().toString();
+        return CONFIGURATIONS.computeIfAbsent(key, k -> {
+            Configuration configuration = new Configuration(Configuration.VERSION_2_3_30);
+            if (promptPath == null) {
+                configuration.setClassForTemplateLoading(PromptTemplate.class, "/prompt");
+            } else {
+                try {
+                    configuration.setDirectoryForTemplateLoading(promptPath.toFile());
+                } catch (IOException e) {
+                    throw new RuntimeException("In PromptTemplate.getConfiguration: " + e);
+                }
+            }
+            configuration.setDefaultEncoding("utf-8");
+            return configuration;
+        });
+    }
+
+    /**
+     * Get the variables of the template, scanned once per loaded template.
+     */
+    private static TemplateVariables getVariables(Template template) {
+        synchronized (TEMPLATE_VARIABLES) {
+            return TEMPLATE_VARIABLES.computeIfAbsent(template, t -> new TemplateVariables(t.toString()));
+        }
+    }
+
+    /**
+     * Keys referred to by {@code ${key}} in template order with their number of occurrences,
+     * and the maps listed by {@code <#list key?keys ...>}.
+     */
+    private static class TemplateVariables {
+        final List<String> matches = new ArrayList<>();
+        final Map<String, Integer> occurrences = new HashMap<>();
+        final List<String> listedMaps = new ArrayList<>();
+        final boolean usesFullProjectCode;
+
+        TemplateVariables(String text) {
+            usesFullProjectCode = text.contains(FULL_PROJECT_CODE);
+            Matcher matcher = VARIABLE_PATTERN.matcher(text);
+            while (matcher.find()) {
+                String e = matcher.group(1);
+                occurrences.merge(e, 1, Integer::sum);
+                if (!matches.contains(e)) {
+                    matches.add(e);
                 }
-                matches.remove(matches.size()-1);
             }
-        } while (AbstractRunner.isExceedMaxTokens(this.maxPromptTokens, generatedText) && matches.size()>0);
-        return generatedText;
+            Matcher listMatcher = LIST_PATTERN.matcher(text);
+            while (listMatcher.find()) {
+                if (!listedMaps.contains(listMatcher.group(1))) {
+                    listedMaps.add(listMatcher.group(1));
+                }
+            }
+        }
+    }
+
+    private String render(Template template) throws IOException, TemplateException {
+        StringWriter writer = new StringWriter();
+        template.process(dataModel, writer);
+        return writer.toString();
     }
 
     /**
@@ -143,10 +303,11 @@ public class PromptTemplate {
         }
         // String
         if (config.getExamplePath() != null) {
-            ExampleUsage exampleUsage = new ExampleUsage(config.getExamplePath(), promptInfo.className);
-            this.dataModel.put("example_usage", exampleUsage.getShortestUsage(promptInfo.getMethodInfo().methodSignature));
+            this.dataModel.put("example_usage", config.getExampleUsageIndex()
+                    .getShortestUsage(promptInfo.className, promptInfo.getMethodInfo().methodSignature));
         }
-        this.dataModel.put("project_full_code", getFullProjectCode(promptInfo.getClassName(), config));
+        this.dataModel.remove(FULL_PROJECT_CODE);
+        this.fullProjectCodeClass = promptInfo.getClassName();
         this.dataModel.put("method_name", promptInfo.getMethodName());
         this.dataModel.put("full_class_name",promptInfo.getFullClassName());
         this.dataModel.put("method_sig", promptInfo.getMethodSignature());
@@ -198,14 +359,9 @@ public class PromptTemplate {
         Map<String, String> depBrief = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : methodInfo.dependentMethods.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depBrief;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depBrief;
             }
             String info = "";
             for (String depMethodSig : entry.getValue()) {
@@ -295,14 +451,9 @@ public class PromptTemplate {
         Map<String, String> depBodies = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : methodInfo.dependentMethods.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depBodies;
             }
             String info = "";
             for (String depMethodSig : entry.getValue()) {
@@ -321,14 +472,9 @@ public class PromptTemplate {
         Map<String, String> depFields = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depFields;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depFields;
             }
             depFields.put(depClassName, AbstractRunner.joinLines(depClassInfo.fields));
         }
@@ -338,14 +484,9 @@ public class PromptTemplate {
             if (depFields.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depFields;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depFields;
             }
             depFields.put(depClassName, AbstractRunner.joinLines(depClassInfo.fields));
         }
@@ -356,14 +497,9 @@ public class PromptTemplate {
         Map<String, String> depConstructorSigs = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depConstructorSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depConstructorSigs;
             }
             depConstructorSigs.put(depClassName, AbstractRunner.joinLines(depClassInfo.constructorBrief));
         }
@@ -373,14 +509,9 @@ public class PromptTemplate {
             if (depConstructorSigs.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depConstructorSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depConstructorSigs;
             }
             depConstructorSigs.put(depClassName, AbstractRunner.joinLines(depClassInfo.constructorBrief));
         }
@@ -391,14 +522,9 @@ public class PromptTemplate {
         Map<String, String> depConstructorBodies = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depConstructorBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depConstructorBodies;
             }
 
             String info = "";
@@ -417,14 +543,9 @@ public class PromptTemplate {
             if (depConstructorBodies.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depConstructorBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depConstructorBodies;
             }
 
             String info = "";
@@ -447,14 +568,9 @@ public class PromptTemplate {
         Map<String, String> depClassSigs = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-//                return depClassSigs;
-                continue;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
+//                return depClassSigs;
                 continue;
             }
             depClassSigs.put(depClassName, depClassInfo.classSignature);
@@ -465,14 +581,9 @@ public class PromptTemplate {
             if (depClassSigs.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-//                return depClassSigs;
-                continue;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
+//                return depClassSigs;
                 continue;
             }
             depClassSigs.put(depClassName, depClassInfo.classSignature);
@@ -484,14 +595,9 @@ public class PromptTemplate {
         Map<String, ClassInfo> depClassSigs = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depClassSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depClassSigs;
             }
             depClassSigs.put(depClassName, depClassInfo);
         }
@@ -501,12 +607,7 @@ public class PromptTemplate {
             if (depClassSigs.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                continue;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -519,14 +620,9 @@ public class PromptTemplate {
         Map<String, String> depClassBodies = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depClassBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depClassBodies;
             }
             depClassBodies.put(depClassName, depClassInfo.classDeclarationCode);
         }
@@ -536,14 +632,9 @@ public class PromptTemplate {
             if (depClassBodies.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depClassBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depClassBodies;
             }
             depClassBodies.put(depClassName, depClassInfo.classDeclarationCode);
         }
@@ -554,14 +645,9 @@ public class PromptTemplate {
         Map<String, String> depPackages = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depPackages;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depPackages;
             }
             depPackages.put(depClassName, depClassInfo.packageName);
         }
@@ -571,14 +657,9 @@ public class PromptTemplate {
             if (depPackages.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depPackages;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depPackages;
             }
             depPackages.put(depClassName, depClassInfo.packageName);
         }
@@ -589,14 +670,9 @@ public class PromptTemplate {
         Map<String, String> depImports = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depImports;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depImports;
             }
             depImports.put(depClassName, AbstractRunner.joinLines(depClassInfo.imports));
         }
@@ -606,14 +682,9 @@ public class PromptTemplate {
             if (depImports.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depImports;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depImports;
             }
             depImports.put(depClassName, AbstractRunner.joinLines(depClassInfo.imports));
         }
@@ -624,14 +695,9 @@ public class PromptTemplate {
         Map<String, String> depGSSigs = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depGSSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depGSSigs;
             }
             depGSSigs.put(depClassName, AbstractRunner.joinLines(depClassInfo.getterSetterSigs));
         }
@@ -641,14 +707,9 @@ public class PromptTemplate {
             if (depGSSigs.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depGSSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depGSSigs;
             }
             depGSSigs.put(depClassName, AbstractRunner.joinLines(depClassInfo.getterSetterSigs));
         }
@@ -659,14 +720,9 @@ public class PromptTemplate {
         Map<String, String> depGSBodies = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depGSBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depGSBodies;
             }
 
             String info = "";
@@ -685,14 +741,9 @@ public class PromptTemplate {
             if (depGSBodies.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depGSBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(Files.readString(depClassInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depGSBodies;
             }
 
             String info = "";
@@ -708,21 +759,10 @@ public class PromptTemplate {
         return depGSBodies;
     }
 
+    /**
+     * The code of all source files of the project except the ones of the class, from the corpus of the run.
+     */
     public String getFullProjectCode(String className, Config config) {
-        String fullProjectCode = "";
-        List<String> classPaths = ProjectParser.scanSourceDirectory(config.project);
-        // read the file content of each path and append to fullProjectCode
-        for (String path : classPaths) {
-            String cn = path.substring(path.lastIndexOf(File.separator) + 1, path.lastIndexOf("."));
-            if (cn.equals(className)) {
-                continue;
-            }
-            try {
-                fullProjectCode += Files.readString(Paths.get(path), StandardCharsets.UTF_8) + "\n";
-            } catch (IOException e) {
-                config.getLogger().warn("Failed to append class code for " + className);
-            }
-        }
-        return fullProjectCode;
+        return config.getProjectCorpus().getCodeExcluding(className);
     }
 }
@@ -10,7 +10,6 @@ import org.junit.platform.launcher.listeners.TestExecutionSummary;
 import zju.cst.aces.api.Task;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.*;
-import zju.cst.aces.parser.ClassParser;
 import zju.cst.aces.prompt.PromptGenerator;
 import zju.cst.aces.util.CodeExtractor;
 import zju.cst.aces.util.TestProcessor;
@@ -281,29 +280,14 @@ public abstract class AbstractRunner {
     public static ClassInfo getClassInfo(Config config, String className) throws IOException {
         try {
             String fullClassName = Task.getFullClassName(config, className);
-            Path classInfoPath = config.getParseOutput().resolve(fullClassName.replace(".", File.separator)).resolve("class.json");
-            if (!classInfoPath.toFile().exists()) {
-                return null;
-            }
-            return GSON.fromJson(Files.readString(classInfoPath, StandardCharsets.UTF_8), ClassInfo.class);
+            return config.getParsedInfoRepository().getClassInfo(fullClassName);
         } catch (InvalidPathException e) {
             return null;
         }
     }
 
     public static MethodInfo getMethodInfo(Config config, ClassInfo info, String mSig) throws IOException {
-        String packagePath = info.getPackageName()
-                .replace("package ", "")
-                .replace(".", File.separator)
-                .replace(";", "");
-        Path depMethodInfoPath = config.getParseOutput()
-                .resolve(packagePath)
-                .resolve(info.className)
-                .resolve(ClassParser.getFilePathBySig(mSig, info));
-        if (!depMethodInfoPath.toFile().exists()) {
-            return null;
-        }
-        return GSON.fromJson(Files.readString(depMethodInfoPath, StandardCharsets.UTF_8), MethodInfo.class);
+        return config.getParsedInfoRepository().getMethodInfo(info, mSig);
     }
 
     public static String getDepInfo(Config config, String depClassName, Set<String> depMethods) throws IOException {
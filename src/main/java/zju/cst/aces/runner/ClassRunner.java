@@ -8,11 +8,9 @@ import zju.cst.aces.util.TestClassMerger;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.concurrent.Callable;
 
 /**
  * Inherit the {@link AbstractRunner} class,
@@ -35,11 +33,11 @@ public class ClassRunner extends AbstractRunner {
     public ClassRunner(Config config, String fullClassName) throws IOException {
         super(config, fullClassName);
         infoDir = config.getParseOutput().resolve(fullClassName.replace(".", File.separator)).toFile();
-        if (!infoDir.isDirectory()) {
+        classInfo = config.getParsedInfoRepository().getClassInfo(fullClassName);
+        if (classInfo == null) {
             config.getLogger().warn("Error: " + fullClassName + " no parsed info found");
+            throw new IOException("No parsed info found for " + fullClassName);
         }
-        File classInfoFile = new File(infoDir + File.separator + "class.json");
-        classInfo = GSON.fromJson(Files.readString(classInfoFile.toPath(), StandardCharsets.UTF_8), ClassInfo.class);
     }
 
     /**
@@ -73,44 +71,27 @@ public class ClassRunner extends AbstractRunner {
     }
 
     public void methodJob() {
-        ExecutorService executor = Executors.newFixedThreadPool(config.getMethodThreads());
-        List<Future<String>> futures = new ArrayList<>();
+        List<Callable<String>> jobs = new ArrayList<>();
         for (String mSig : classInfo.methodSigs.keySet()) {
-            Callable<String> callable = new Callable<String>() {
-                @Override
-                public String call() throws Exception {
-                    MethodInfo methodInfo = getMethodInfo(config, classInfo, mSig);
-                    if (methodInfo == null) {
-                        return "No parsed info found for " + mSig + " in " + fullClassName;
-                    }
-                    if (!Counter.filter(methodInfo)) {
-                        return "Skip method: " + mSig + " in class: " + fullClassName;
-                    }
-                    new MethodRunner(config, fullClassName, methodInfo).start();
-                    int newCount = config.getCompletedJobCount().incrementAndGet();
-                    config.getLogger().info(String.format("\n==========================\n[%s] Completed Method Jobs:   [ %s /  %s]", config.pluginSign, newCount, config.getJobCount()));
-                    return "Processed " + mSig;
+            jobs.add(() -> {
+                MethodInfo methodInfo = getMethodInfo(config, classInfo, mSig);
+                if (methodInfo == null) {
+                    return "No parsed info found for " + mSig + " in " + fullClassName;
+                }
+                if (!Counter.filter(methodInfo)) {
+                    return "Skip method: " + mSig + " in class: " + fullClassName;
                 }
-            };
-            Future<String> future = executor.submit(callable);
-            futures.add(future);
+                new MethodRunner(config, fullClassName, methodInfo).start();
+                int newCount = config.getCompletedJobCount().incrementAndGet();
+                config.getLogger().info(String.format("\n==========================\n[%s] Completed Method Jobs:   [ %s /  %s]", config.pluginSign, newCount, config.getJobCount()));
+                return "Processed " + mSig;
+            });
         }
 
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-            public void run() {
-                executor.shutdownNow();
-            }
-        });
-
-        for (Future<String> future : futures) {
-            try {
-                String result = future.get();
+        for (String result : config.getJobScheduler().invokeAll(jobs)) {
+            if (result != null) {
                 System.out.println(result);
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
             }
         }
-
-        executor.shutdown();
     }
 }
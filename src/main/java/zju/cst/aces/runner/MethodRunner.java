@@ -4,10 +4,15 @@ import zju.cst.aces.api.Phase;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.api.impl.PromptConstructorImpl;
 import zju.cst.aces.dto.*;
+import zju.cst.aces.util.CancellationToken;
+import zju.cst.aces.util.StagePipeline;
+
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Inherited from {@link ClassRunner},
@@ -27,30 +32,17 @@ public class MethodRunner extends ClassRunner {
 
     @Override
     public void start() throws IOException {
-        if (!config.isStopWhenSuccess() && config.isEnableMultithreading()) {
-            ExecutorService executor = Executors.newFixedThreadPool(config.getTestNumber());
-            List<Future<String>> futures = new ArrayList<>();
+        if (config.isEnablePipeline()) {
+            startPipelined();
+        } else if (config.isStopWhenSuccess() && config.getSpeculativeAttempts() > 1 && config.getTestNumber() > 1) {
+            startSpeculative();
+        } else if (!config.isStopWhenSuccess() && config.isEnableMultithreading()) {
+            List<Callable<Boolean>> attempts = new ArrayList<>();
             for (int num = 0; num < config.getTestNumber(); num++) {
                 int finalNum = num;
-                Callable<String> callable = () -> {
-                    startRounds(finalNum);
-                    return "";
-                };
-                Future<String> future = executor.submit(callable);
-                futures.add(future);
-            }
-            Runtime.getRuntime().addShutdownHook(new Thread(executor::shutdownNow));
-
-            for (Future<String> future : futures) {
-                try {
-                    String result = future.get();
-                    System.out.println(result);
-                } catch (InterruptedException | ExecutionException e) {
-                    e.printStackTrace();
-                }
+                attempts.add(() -> startRounds(finalNum));
             }
-
-            executor.shutdown();
+            config.getJobScheduler().invokeAll(attempts);
         } else {
             for (int num = 0; num < config.getTestNumber(); num++) {
                 boolean result = startRounds(num);
@@ -61,6 +53,168 @@ public class MethodRunner extends ClassRunner {
         }
     }
 
+    /**
+     * Run up to {@code speculativeAttempts} attempts at the same time, each runner taking the next attempt number
+     * when its attempt fails. Once an attempt passes, the others are cancelled with their LLM requests,
+     * compilations and forked test executions, and the attempts not started yet are skipped.
+     */
+    private void startSpeculative() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger next = new AtomicInteger();
+        int runnerCount = Math.min(config.getSpeculativeAttempts(), config.getTestNumber());
+        List<Callable<Boolean>> runners = new ArrayList<>();
+        for (int i = 0; i < runnerCount; i++) {
+            runners.add(() -> CancellationToken.callWith(token, () -> {
+                while (!token.isCancelled()) {
+                    int num = next.getAndIncrement();
+                    if (num >= config.getTestNumber()) {
+                        return false;
+                    }
+                    if (startRounds(num)) {
+                        token.cancel();
+                        return true;
+                    }
+                }
+                return false;
+            }));
+        }
+        config.getJobScheduler().invokeAll(runners);
+    }
+
+    /**
+     * Run the attempts on the stages of the {@link StagePipeline}: the prompt and LLM steps on the generation stage,
+     * the compilation and execution on the validation stage, a failed validation goes back to the generation stage
+     * for the next repair round. The attempts run in lanes taking the next attempt number when one ends,
+     * one lane with {@code stopWhenSuccess} (or {@code speculativeAttempts}, cancelled once one passes),
+     * otherwise one lane per attempt. A lane holds a permit of the pipeline until it ends.
+     */
+    private void startPipelined() {
+        StagePipeline pipeline = config.getPipeline();
+        CancellationToken token = new CancellationToken();
+        AtomicInteger next = new AtomicInteger();
+        int laneCount = config.isStopWhenSuccess() ? Math.max(1, config.getSpeculativeAttempts()) : config.getTestNumber();
+        List<CompletableFuture<Void>> lanes = new ArrayList<>();
+        for (int i = 0; i < Math.min(laneCount, config.getTestNumber()); i++) {
+            if (token.isCancelled() || next.get() >= config.getTestNumber()) {
+                break;
+            }
+            pipeline.acquire();
+            Lane lane = new Lane(pipeline, token, next);
+            lanes.add(lane.done);
+            lane.nextAttempt();
+        }
+        CompletableFuture.allOf(lanes.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * Attempts of the method run one after another on the stages of the pipeline.
+     */
+    private class Lane {
+        final StagePipeline pipeline;
+        final CancellationToken token;
+        final AtomicInteger next;
+        final Phase phase = new Phase(config);
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        int num;
+        PromptConstructorImpl pc;
+
+        Lane(StagePipeline pipeline, CancellationToken token, AtomicInteger next) {
+            this.pipeline = pipeline;
+            this.token = token;
+            this.next = next;
+        }
+
+        void nextAttempt() {
+            num = next.getAndIncrement();
+            pc = null;
+            if (token.isCancelled() || num >= config.getTestNumber()) {
+                finish();
+                return;
+            }
+            submit(StagePipeline.GENERATION, this::generate);
+        }
+
+        void generate() {
+            CancellationToken.throwIfCancelled();
+            if (pc == null) {
+                pc = phase.new PromptGeneration(classInfo, methodInfo).execute(num);
+                pc.getPromptInfo().setRound(0);
+                phase.new TestGeneration().execute(pc);
+            } else {
+                phase.new Repair().execute(pc);
+            }
+            submit(StagePipeline.VALIDATION, this::validate);
+        }
+
+        void validate() {
+            PromptInfo promptInfo = pc.getPromptInfo();
+            if (phase.new Validation().execute(pc)) {
+                exportRecord(promptInfo, classInfo, num);
+                if (config.isStopWhenSuccess()) {
+                    token.cancel();
+                    finish();
+                } else {
+                    nextAttempt();
+                }
+                return;
+            }
+            int rounds = promptInfo.getRound() + 1;
+            if (rounds < config.getMaxRounds() && !token.isCancelled()) {
+                promptInfo.setRound(rounds);
+                submit(StagePipeline.GENERATION, this::generate);
+                return;
+            }
+            endAttempt();
+        }
+
+        void endAttempt() {
+            if (token.isCancelled()) {
+                config.getLogger().info("Attempt " + num + " for method < " + methodInfo.methodName + " > cancelled, another attempt passed");
+                markCancelled(pc.getPromptInfo(), num);
+            }
+            exportRecord(pc.getPromptInfo(), classInfo, num);
+            nextAttempt();
+        }
+
+        void submit(String stage, Runnable step) {
+            pipeline.getStage(stage).submit(() -> {
+                try {
+                    CancellationToken.callWith(token, () -> {
+                        step.run();
+                        return null;
+                    });
+                } catch (Exception e) {
+                    recover(e);
+                }
+            });
+        }
+
+        /**
+         * A failed or cancelled step ends its attempt, the lane goes on with the next attempt.
+         */
+        void recover(Exception e) {
+            try {
+                if (!token.isCancelled()) {
+                    config.getLogger().error("In MethodRunner: attempt " + num + " for method < " + methodInfo.methodName + " > failed: " + e);
+                }
+                if (pc != null) {
+                    endAttempt();
+                } else {
+                    nextAttempt();
+                }
+            } catch (RuntimeException again) {
+                config.getLogger().error("In MethodRunner: " + again);
+                finish();
+            }
+        }
+
+        void finish() {
+            if (done.complete(null)) {
+                pipeline.release();
+            }
+        }
+    }
+
     /**
      * Call the {@code execute} method of {@link Phase.PromptGeneration} according to {@code config} to create prompt words,
      * use the generated prompt words as parameters to call the {@code execute} method of {@link Phase.TestGeneration}
@@ -78,32 +232,70 @@ public class MethodRunner extends ClassRunner {
         PromptInfo promptInfo = pc.getPromptInfo();
         promptInfo.setRound(0);
 
-        // Test Generation Phase
-        phase.new TestGeneration().execute(pc);
-
-        // Validation
-        if (phase.new Validation().execute(pc)) {
-            exportRecord(pc.getPromptInfo(), classInfo, num);
-            return true;
-        }
-
-        // Validation and Repair Phase
-        for (int rounds = 1; rounds < config.getMaxRounds(); rounds++) {
-
-            promptInfo.setRound(rounds);
-
-            // Repair
-            phase.new Repair().execute(pc);
+        try {
+            // Test Generation Phase
+            phase.new TestGeneration().execute(pc);
 
             // Validation
-            if (phase.new Validation().execute(pc)) {
+            if (validate(phase, pc)) {
                 exportRecord(pc.getPromptInfo(), classInfo, num);
                 return true;
             }
 
+            // Validation and Repair Phase
+            for (int rounds = 1; rounds < config.getMaxRounds(); rounds++) {
+                CancellationToken.throwIfCancelled();
+
+                promptInfo.setRound(rounds);
+
+                // Repair
+                phase.new Repair().execute(pc);
+
+                // Validation
+                if (validate(phase, pc)) {
+                    exportRecord(pc.getPromptInfo(), classInfo, num);
+                    return true;
+                }
+
+            }
+        } catch (RuntimeException e) {
+            // the stages of a cancelled attempt fail as they are aborted
+            if (!CancellationToken.isCurrentCancelled()) {
+                throw e;
+            }
         }
 
+        if (CancellationToken.isCurrentCancelled()) {
+            config.getLogger().info("Attempt " + num + " for method < " + methodInfo.methodName + " > cancelled, another attempt passed");
+            markCancelled(promptInfo, num);
+        }
         exportRecord(pc.getPromptInfo(), classInfo, num);
         return false;
     }
+
+    /**
+     * Flag the record of the round the attempt was cancelled in, added if the round had not started.
+     */
+    private static void markCancelled(PromptInfo promptInfo, int num) {
+        int round = promptInfo.getRound() == null ? 0 : promptInfo.getRound();
+        RoundRecord record;
+        if (promptInfo.getRecords().size() > round) {
+            record = promptInfo.getRecords().get(round);
+        } else {
+            record = new RoundRecord(round);
+            record.setAttempt(num);
+            promptInfo.addRecord(record);
+        }
+        record.setCancelled(true);
+    }
+
+    /**
+     * Compile and execute on the bounded workers of the {@link zju.cst.aces.util.JobScheduler},
+     * the prompt and LLM stages may run on virtual threads. The stage keeps the cancellation token of the attempt.
+     */
+    private boolean validate(Phase phase, PromptConstructorImpl pc) {
+        CancellationToken.throwIfCancelled();
+        CancellationToken token = CancellationToken.current();
+        return config.getJobScheduler().runBounded(() -> CancellationToken.callWith(token, () -> phase.new Validation().execute(pc)));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,249 @@
+package zju.cst.aces.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes requests over the api keys with a requests-per-minute and a tokens-per-minute bucket per key.
+ *
+ * <P>
+ * Each request reserves one request and its estimated tokens from the key with the most headroom.
+ * A bucket may go below zero, the caller then waits until it is refilled, so keys are used at their
+ * configured rate instead of bursting into 429 responses. Keys rejected by the server are taken out
+ * of rotation for a cooldown while another key is available, the last usable key is only held back for
+ * an explicit {@code Retry-After} and otherwise left to the retry backoff of the client.
+ * A limit less than or equal to 0 means unlimited.
+ * </P>
+ */
+public class ApiKeyScheduler {
+    public static final long DEFAULT_COOLDOWN_MILLIS = 60_000;
+    private static final long MINUTE_MILLIS = 60_000;
+
+    private final List<KeyState> keys = new ArrayList<>();
+    private final int requestsPerMinute;
+    private final int tokensPerMinute;
+    private final long cooldownMillis;
+    private final long startTime = System.currentTimeMillis();
+
+    public ApiKeyScheduler(String[] apiKeys, int requestsPerMinute, int tokensPerMinute, long cooldownMillis) {
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+        this.cooldownMillis = cooldownMillis > 0 ? cooldownMillis : DEFAULT_COOLDOWN_MILLIS;
+        long now = System.currentTimeMillis();
+        if (apiKeys != null) {
+            for (String key : apiKeys) {
+                keys.add(new KeyState(key, now));
+            }
+        }
+    }
+
+    /**
+     * Reserve a request of the estimated tokens on the key with the most headroom.
+     * @return the chosen key and how long the caller should wait before sending
+     */
+    public synchronized Lease acquire(int estimatedTokens) {
+        long now = System.currentTimeMillis();
+        KeyState best = choose(now, estimatedTokens);
+        long wait = best.waitFor(now, estimatedTokens);
+        best.requestBucket -= 1;
+        best.tokenBucket -= estimatedTokens;
+        best.requests++;
+        return new Lease(best.key, Math.max(0, wait), estimatedTokens);
+    }
+
+    /**
+     * @return the key with the most headroom, nothing is reserved
+     */
+    public synchronized String peek() {
+        return choose(System.currentTimeMillis(), 0).key;
+    }
+
+    private KeyState choose(long now, int estimatedTokens) {
+        if (keys.isEmpty()) {
+            throw new RuntimeException("apiKeys is null!");
+        }
+        KeyState best = null;
+        long bestWait = Long.MAX_VALUE;
+        double bestHeadroom = -Double.MAX_VALUE;
+        for (KeyState key : keys) {
+            key.refill(now);
+            long wait = key.waitFor(now, estimatedTokens);
+            double headroom = key.headroom();
+            if (wait < bestWait || (wait == bestWait && headroom > bestHeadroom)) {
+                best = key;
+                bestWait = wait;
+                bestHeadroom = headroom;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Record a successful request, the bucket is corrected by the difference between the used and estimated tokens.
+     */
+    public synchronized void onSuccess(Lease lease, int usedTokens) {
+        KeyState key = find(lease.getKey());
+        if (key == null) {
+            return;
+        }
+        key.successes++;
+        if (usedTokens > 0) {
+            key.tokens += usedTokens;
+            key.tokenBucket -= usedTokens - lease.getEstimatedTokens();
+        }
+    }
+
+    /**
+     * Record a failed request. Keys rejected with 401, 403 or 429 are taken out of rotation,
+     * for the {@code Retry-After} delay if given, otherwise for the cooldown, as long as another key
+     * is not cooling down. The last usable key only waits for the {@code Retry-After} delay.
+     * @param statusCode the http status, or -1 for an I/O error
+     */
+    public synchronized void onFailure(Lease lease, int statusCode, long retryAfterMillis) {
+        KeyState key = find(lease.getKey());
+        if (key == null) {
+            return;
+        }
+        key.failures++;
+        if (statusCode != 401 && statusCode != 403 && statusCode != 429) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!hasOtherUsableKey(key, now)) {
+            key.cooldownUntil = Math.max(key.cooldownUntil, now + Math.max(0, retryAfterMillis));
+        } else if (statusCode == 429) {
+            key.cooldownUntil = now + (retryAfterMillis > 0 ? retryAfterMillis : cooldownMillis);
+        } else {
+            key.cooldownUntil = now + cooldownMillis * 10;
+        }
+    }
+
+    private boolean hasOtherUsableKey(KeyState key, long now) {
+        for (KeyState other : keys) {
+            if (other != key && other.cooldownUntil <= now) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Requests, successes, failures, tokens and throughput of each key, keys are masked.
+     */
+    public synchronized Map<String, String> getStats() {
+        Map<String, String> stats = new LinkedHashMap<>();
+        double minutes = Math.max(1.0 / 60, (System.currentTimeMillis() - startTime) / (double) MINUTE_MILLIS);
+        for (KeyState key : keys) {
+            stats.put(mask(key.key), String.format("requests: %d, successes: %d, failures: %d, tokens: %d, %.1f req/min, %.0f tokens/min",
+                    key.requests, key.successes, key.failures, key.tokens, key.successes / minutes, key.tokens / minutes));
+        }
+        return stats;
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder("API key usage:");
+        getStats().forEach((key, stat) -> sb.append("\n ").append(key).append(" >>> ").append(stat));
+        return sb.toString();
+    }
+
+    private KeyState find(String key) {
+        for (KeyState state : keys) {
+            if (state.key.equals(key)) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    private static String mask(String key) {
+        return key.length() <= 4 ? "****" : "****" + key.substring(key.length() - 4);
+    }
+
+    private class KeyState {
+        final String key;
+        double requestBucket;
+        double tokenBucket;
+        long lastRefill;
+        long cooldownUntil;
+        long requests;
+        long successes;
+        long failures;
+        long tokens;
+
+        KeyState(String key, long now) {
+            this.key = key;
+            this.requestBucket = requestsPerMinute;
+            this.tokenBucket = tokensPerMinute;
+            this.lastRefill = now;
+        }
+
+        void refill(long now) {
+            long elapsed = now - lastRefill;
+            if (elapsed <= 0) {
+                return;
+            }
+            requestBucket = Math.min(requestsPerMinute, requestBucket + elapsed * (double) requestsPerMinute / MINUTE_MILLIS);
+            tokenBucket = Math.min(tokensPerMinute, tokenBucket + elapsed * (double) tokensPerMinute / MINUTE_MILLIS);
+            lastRefill = now;
+        }
+
+        /**
+         * Milliseconds until the key is out of cooldown and both buckets can cover one more request of the given tokens.
+         */
+        long waitFor(long now, int estimatedTokens) {
+            long wait = Math.max(0, cooldownUntil - now);
+            if (requestsPerMinute > 0 && requestBucket < 1) {
+                wait = Math.max(wait, (long) Math.ceil((1 - requestBucket) * MINUTE_MILLIS / requestsPerMinute));
+            }
+            if (tokensPerMinute > 0 && tokenBucket < estimatedTokens) {
+                double needed = Math.min(estimatedTokens, tokensPerMinute) - tokenBucket;
+                wait = Math.max(wait, (long) Math.ceil(needed * MINUTE_MILLIS / tokensPerMinute));
+            }
+            return wait;
+        }
+
+        /**
+         * Fraction of the buckets left, the lowest of both.
+         */
+        double headroom() {
+            double headroom = 1.0;
+            if (requestsPerMinute > 0) {
+                headroom = Math.min(headroom, requestBucket / requestsPerMinute);
+            }
+            if (tokensPerMinute > 0) {
+                headroom = Math.min(headroom, tokenBucket / tokensPerMinute);
+            }
+            if (requestsPerMinute <= 0 && tokensPerMinute <= 0) {
+                // unlimited keys are balanced by the number of requests
+                headroom = -requests;
+            }
+            return headroom;
+        }
+    }
+
+    public static class Lease {
+        private final String key;
+        private final long waitMillis;
+        private final int estimatedTokens;
+
+        Lease(String key, long waitMillis, int estimatedTokens) {
+            this.key = key;
+            this.waitMillis = waitMillis;
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getWaitMillis() {
+            return waitMillis;
+        }
+
+        public int getEstimatedTokens() {
+            return estimatedTokens;
+        }
+    }
+}
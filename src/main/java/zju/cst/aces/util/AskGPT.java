@@ -2,25 +2,22 @@ package zju.cst.aces.util;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import okhttp3.MediaType;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.api.config.ModelConfig;
 import zju.cst.aces.dto.ChatMessage;
 import zju.cst.aces.dto.ChatResponse;
 
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Construct the request body to request the response to the gpt api.
  */
 public class AskGPT {
-    private static final MediaType MEDIA_TYPE = MediaType.parse("application/json");
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
     public Config config;
 
@@ -32,53 +29,46 @@ public class AskGPT {
      * Configure the prompt word, model, frequency, and maximum token for the request body,
      * send a request to gpt, and parse the JSON response.
      * @param chatMessages prompt word
-     * @return gpt's reply
+     * The request is cancelled if the {@link CancellationToken} of the calling thread is.
+     * @return gpt's reply, or null if all tries failed or the request was cancelled
      */
     public ChatResponse askChatGPT(List<ChatMessage> chatMessages) {
-        String apiKey = config.getRandomKey();
-        int maxTry = 5;
-        while (maxTry > 0) {
-            Response response = null;
-            try {
-                Map<String, Object> payload = new HashMap<>();
+        CompletableFuture<ChatResponse> future = askChatGPTAsync(chatMessages);
+        CancellationToken.Registration registration = CancellationToken.register(() -> future.cancel(true));
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            config.getLogger().debug("AskGPT: Failed to get response\n");
+            return null;
+        } finally {
+            registration.close();
+        }
+    }
 
-//                if (Objects.equals(config.getModel(), "code-llama") || Objects.equals(config.getModel(), "code-llama-13B")) {
-//                    payload.put("max_tokens", 8092);
-//                }
+    /**
+     * Send the request through the shared {@link AsyncChatClient} without blocking.
+     * @param chatMessages prompt word
+     * @return a future of gpt's reply, completed exceptionally if all tries failed
+     */
+    public CompletableFuture<ChatResponse> askChatGPTAsync(List<ChatMessage> chatMessages) {
+        Map<String, Object> payload = new HashMap<>();
 
-                ModelConfig modelConfig = config.getModel().getDefaultConfig();
+//        if (Objects.equals(config.getModel(), "code-llama") || Objects.equals(config.getModel(), "code-llama-13B")) {
+//            payload.put("max_tokens", 8092);
+//        }
 
-                payload.put("messages", chatMessages);
-                payload.put("model", modelConfig.getModelName());
-                payload.put("temperature", config.getTemperature());
-                payload.put("frequency_penalty", config.getFrequencyPenalty());
-                payload.put("presence_penalty", config.getPresencePenalty());
-                payload.put("max_tokens", config.getMaxResponseTokens());
-                String jsonPayload = GSON.toJson(payload);
+        ModelConfig modelConfig = config.getModel().getDefaultConfig();
 
-                RequestBody body = RequestBody.create(MEDIA_TYPE, jsonPayload);
-                Request request = new Request.Builder().url(modelConfig.getUrl()).post(body).addHeader("Content-Type", "application/json").addHeader("Authorization", "Bearer " + apiKey).build();
+        payload.put("messages", chatMessages);
+        payload.put("model", modelConfig.getModelName());
+        payload.put("temperature", config.getTemperature());
+        payload.put("frequency_penalty", config.getFrequencyPenalty());
+        payload.put("presence_penalty", config.getPresencePenalty());
+        payload.put("max_tokens", config.getMaxResponseTokens());
+        String jsonPayload = GSON.toJson(payload);
 
-                response = config.getClient().newCall(request).execute();
-                if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
-                try {
-                    Thread.sleep(config.sleepTime);
-                } catch (InterruptedException ie) {
-                    throw new RuntimeException("In AskGPT.askChatGPT: " + ie);
-                }
-                if (response.body() == null) throw new IOException("Response body is null.");
-                ChatResponse chatResponse = GSON.fromJson(response.body().string(), ChatResponse.class);
-                response.close();
-                return chatResponse;
-            } catch (IOException e) {
-                if (response != null) {
-                    response.close();
-                }
-                config.getLogger().error("In AskGPT.askChatGPT: " + e);
-                maxTry--;
-            }
-        }
-        config.getLogger().debug("AskGPT: Failed to get response\n");
-        return null;
+        // rough estimate of the prompt tokens plus the completion limit, corrected by the usage of the response
+        int estimatedTokens = jsonPayload.length() / 4 + config.getMaxResponseTokens();
+        return config.getChatClient().chat(modelConfig.getUrl(), jsonPayload, estimatedTokens);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,303 @@
+package zju.cst.aces.util;
+
+import com.google.gson.Gson;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.dto.ChatResponse;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking client of the chat completion api, shared by all runners of a {@link Config}.
+ *
+ * <P>
+ * At most {@link Config#getMaxInFlightRequests()} requests are sent at the same time over one connection pool,
+ * the others wait in a queue. Failed requests (I/O errors, 408, 429 and 5xx) are retried up to
+ * {@link Config#getMaxRetries()} times, after the delay of the {@code Retry-After} header if present,
+ * otherwise after an exponential backoff with jitter. {@link Config#getSleepTime()} is kept as a pause
+ * before a finished request frees its slot, without blocking the caller.
+ * Cancelling the returned future drops the request if it is still queued, and cancels the http call otherwise.
+ * </P>
+ */
+public class AsyncChatClient {
+    private static final MediaType MEDIA_TYPE = MediaType.parse("application/json");
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+    public static final int DEFAULT_MAX_RETRIES = 4;
+    private static final long BASE_DELAY_MILLIS = 1000;
+    private static final long MAX_DELAY_MILLIS = 60_000;
+
+    private final Config config;
+    private final Gson gson;
+    private final OkHttpClient client;
+    private final int maxInFlight;
+    private final int maxRetries;
+    private final Deque<PendingRequest> queue = new ArrayDeque<>();
+    private final ScheduledExecutorService scheduler;
+    private int inFlight = 0;
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    public AsyncChatClient(Config config) {
+        this.config = config;
+        this.gson = new Gson();
+        this.maxInFlight = config.getMaxInFlightRequests() > 0 ? config.getMaxInFlightRequests() : DEFAULT_MAX_IN_FLIGHT;
+        this.maxRetries = Math.max(0, config.getMaxRetries());
+        Dispatcher dispatcher = new Dispatcher(Executors.newCachedThreadPool(daemonThreadFactory("chatunitest-http")));
+        dispatcher.setMaxRequests(maxInFlight);
+        dispatcher.setMaxRequestsPerHost(maxInFlight);
+        OkHttpClient base = config.getClient() == null ? new OkHttpClient() : config.getClient();
+        this.client = base.newBuilder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxInFlight, 5, TimeUnit.MINUTES))
+                .build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("chatunitest-retry"));
+    }
+
+    /**
+     * Post the json payload to the url of the model.
+     * @param estimatedTokens tokens reserved on the api key, see {@link ApiKeyScheduler}
+     * @return a future completed with the response, or exceptionally when all tries failed
+     */
+    public CompletableFuture<ChatResponse> chat(String url, String jsonPayload, int estimatedTokens) {
+        PendingRequest pending = new PendingRequest(url, jsonPayload, estimatedTokens);
+        pending.future.whenComplete((response, error) -> {
+            Call call = pending.call;
+            if (pending.future.isCancelled() && call != null) {
+                call.cancel();
+            }
+        });
+        enqueue(pending);
+        return pending.future;
+    }
+
+    private void enqueue(PendingRequest pending) {
+        synchronized (this) {
+            queue.addLast(pending);
+            maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        while (true) {
+            PendingRequest pending;
+            synchronized (this) {
+                if (inFlight >= maxInFlight || queue.isEmpty()) {
+                    return;
+                }
+                pending = queue.pollFirst();
+                if (pending.future.isDone()) {
+                    continue;
+                }
+                inFlight++;
+            }
+            send(pending);
+        }
+    }
+
+    private void release(long delayMillis) {
+        if (delayMillis > 0) {
+            scheduler.schedule(() -> release(0), delayMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+        synchronized (this) {
+            inFlight--;
+        }
+        dispatch();
+    }
+
+    /**
+     * Send the request with the key chosen by the {@link ApiKeyScheduler}, after the wait it asks for.
+     * The request keeps its slot while waiting.
+     */
+    private void send(PendingRequest pending) {
+        ApiKeyScheduler keyScheduler = config.getKeyScheduler();
+        ApiKeyScheduler.Lease lease = keyScheduler.acquire(pending.estimatedTokens);
+        if (lease.getWaitMillis() > 0) {
+            scheduler.schedule(() -> send(pending, lease), lease.getWaitMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            send(pending, lease);
+        }
+    }
+
+    private void send(PendingRequest pending, ApiKeyScheduler.Lease lease) {
+        ApiKeyScheduler keyScheduler = config.getKeyScheduler();
+        if (pending.future.isDone()) {
+            release(0);
+            return;
+        }
+        Request request = new Request.Builder()
+                .url(pending.url)
+                .post(RequestBody.create(MEDIA_TYPE, pending.jsonPayload))
+                .addHeader("Content-Type", "application/json")
+                .addHeader("Authorization", "Bearer " + lease.getKey())
+                .build();
+        Call call = client.newCall(request);
+        pending.call = call;
+        if (pending.future.isCancelled()) {
+            call.cancel();
+        }
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                if (pending.future.isCancelled()) {
+                    release(0);
+                    return;
+                }
+                keyScheduler.onFailure(lease, -1, -1);
+                retryOrFail(pending, e.toString(), -1);
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (Response r = response) {
+                    if (!r.isSuccessful()) {
+                        int code = r.code();
+                        long retryAfter = parseRetryAfter(r.header("Retry-After"));
+                        keyScheduler.onFailure(lease, code, retryAfter);
+                        if (code == 408 || code == 429 || code >= 500) {
+                            retryOrFail(pending, "Unexpected code " + r, retryAfter);
+                        } else if ((code == 401 || code == 403) && config.getApiKeys().length > 1) {
+                            // the key is cooling down, retry on another one
+                            retryOrFail(pending, "Unexpected code " + r, 0);
+                        } else {
+                            fail(pending, "Unexpected code " + r);
+                        }
+                        return;
+                    }
+                    if (r.body() == null) {
+                        keyScheduler.onFailure(lease, r.code(), -1);
+                        retryOrFail(pending, "Response body is null.", -1);
+                        return;
+                    }
+                    ChatResponse chatResponse = gson.fromJson(r.body().string(), ChatResponse.class);
+                    keyScheduler.onSuccess(lease, chatResponse.getUsage() == null || chatResponse.getUsage().getTotalTokens() == null ?
+                            0 : chatResponse.getUsage().getTotalTokens());
+                    completed.incrementAndGet();
+                    release(config.getSleepTime());
+                    pending.future.complete(chatResponse);
+                } catch (Exception e) {
+                    retryOrFail(pending, e.toString(), -1);
+                }
+            }
+        });
+    }
+
+    private void retryOrFail(PendingRequest pending, String reason, long retryAfterMillis) {
+        if (pending.future.isCancelled()) {
+            release(0);
+            return;
+        }
+        if (pending.attempt >= maxRetries) {
+            fail(pending, reason);
+            return;
+        }
+        long delay = retryAfterMillis >= 0 ? retryAfterMillis : backoff(pending.attempt);
+        pending.attempt++;
+        retries.incrementAndGet();
+        config.getLogger().warn("In AsyncChatClient: " + reason + ", retry " + pending.attempt + "/" + maxRetries + " in " + delay + " ms");
+        release(0);
+        scheduler.schedule(() -> enqueue(pending), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void fail(PendingRequest pending, String reason) {
+        failed.incrementAndGet();
+        config.getLogger().error("In AsyncChatClient: " + reason);
+        release(0);
+        pending.future.completeExceptionally(new IOException(reason));
+    }
+
+    /**
+     * Exponential backoff with equal jitter, the delay is between half and all of {@code base * 2^attempt}.
+     */
+    static long backoff(int attempt) {
+        long delay = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempt, 16));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Parse the {@code Retry-After} header, in seconds or as a http date.
+     * @return the delay in milliseconds, or -1 if absent or invalid
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        try {
+            return Math.min(MAX_DELAY_MILLIS, Math.max(0, Long.parseLong(value.trim()) * 1000));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                long delay = date.toInstant().toEpochMilli() - System.currentTimeMillis();
+                return Math.min(MAX_DELAY_MILLIS, Math.max(0, delay));
+            } catch (Exception ignored) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Number of requests waiting for a free slot.
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class PendingRequest {
+        final String url;
+        final String jsonPayload;
+        final int estimatedTokens;
+        final CompletableFuture<ChatResponse> future = new CompletableFuture<>();
+        volatile Call call;
+        int attempt = 0;
+
+        PendingRequest(String url, String jsonPayload, int estimatedTokens) {
+            this.url = url;
+            this.jsonPayload = jsonPayload;
+            this.estimatedTokens = estimatedTokens;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package zju.cst.aces.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cancellation shared by concurrent attempts, e.g. the speculative attempts of a method.
+ *
+ * <P>
+ * The token is bound to the thread running an attempt with {@link #callWith(CancellationToken, Callable)},
+ * so the blocking stages (the LLM requests, javac and the forked test execution) find it with {@link #current()}
+ * and register a hook that aborts them when the token is cancelled.
+ * </P>
+ */
+public class CancellationToken {
+    private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<>();
+    private static final Registration NONE = () -> {};
+
+    private volatile boolean cancelled = false;
+    private final Set<Runnable> hooks = new LinkedHashSet<>();
+
+    /**
+     * Run the job with the token bound to the current thread.
+     */
+    public static <T> T callWith(CancellationToken token, Callable<T> job) throws Exception {
+        CancellationToken previous = CURRENT.get();
+        CURRENT.set(token);
+        try {
+            return job.call();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * @return the token bound to the current thread, or null
+     */
+    public static CancellationToken current() {
+        return CURRENT.get();
+    }
+
+    public static boolean isCurrentCancelled() {
+        CancellationToken token = CURRENT.get();
+        return token != null && token.isCancelled();
+    }
+
+    /**
+     * @throws CancellationException if the token of the current thread is cancelled
+     */
+    public static void throwIfCancelled() {
+        if (isCurrentCancelled()) {
+            throw new CancellationException("Attempt cancelled");
+        }
+    }
+
+    /**
+     * Register a hook on the token of the current thread, see {@link #onCancel(Runnable)}.
+     */
+    public static Registration register(Runnable hook) {
+        CancellationToken token = CURRENT.get();
+        return token == null ? NONE : token.onCancel(hook);
+    }
+
+    /**
+     * Run the hook when the token is cancelled, at once if it already is.
+     * @return the registration, to close when the guarded stage is over
+     */
+    public Registration onCancel(Runnable hook) {
+        synchronized (hooks) {
+            if (!cancelled) {
+                hooks.add(hook);
+                return () -> {
+                    synchronized (hooks) {
+                        hooks.remove(hook);
+                    }
+                };
+            }
+        }
+        hook.run();
+        return NONE;
+    }
+
+    /**
+     * Cancel the token and run the registered hooks.
+     */
+    public void cancel() {
+        List<Runnable> pending;
+        synchronized (hooks) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            pending = new ArrayList<>(hooks);
+            hooks.clear();
+        }
+        for (Runnable hook : pending) {
+            try {
+                hook.run();
+            } catch (RuntimeException ignored) {
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
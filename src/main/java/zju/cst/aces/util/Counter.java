@@ -7,6 +7,7 @@ import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.ClassInfo;
 import zju.cst.aces.dto.MethodInfo;
 import zju.cst.aces.parser.ClassParser;
+import zju.cst.aces.parser.PackedInfoStore;
 import zju.cst.aces.parser.ProjectParser;
 import zju.cst.aces.runner.MethodRunner;
 
@@ -64,31 +65,7 @@ public class Counter {
     }
 
     public static Map<String, List<String>> countClassMethod(Path parseOutputPath) throws IOException {
-        Map<String, List<String>> testMap = new HashMap<>();
-        // get all json files names "class.json"
-        List<String> classJsonFiles = Files.walk(parseOutputPath)
-                .filter(Files::isRegularFile)
-                .map(Path::toString)
-                .filter(f -> f.endsWith("class.json"))
-                .collect(Collectors.toList());
-
-        for (String classJsonFile : classJsonFiles) {
-            File classInfoFile = new File(classJsonFile);
-            ClassInfo classInfo = GSON.fromJson(Files.readString(classInfoFile.toPath(), StandardCharsets.UTF_8), ClassInfo.class);
-
-            if (!filter(classInfo)) {
-                continue;
-            }
-            List<String> methodList = new ArrayList<>();
-            for (String mSig : classInfo.methodSigs.keySet()) {
-                MethodInfo methodInfo = getMethodInfo(parseOutputPath, classInfo, mSig);
-                if (!filter(methodInfo)) {
-                    continue;
-                }
-                methodList.add(mSig);
-            }
-            testMap.put(classInfo.fullClassName, methodList);
-        }
+        Map<String, List<String>> testMap = collectTestMap(parseOutputPath);
 
         // Print testMap
         for (String className : testMap.keySet()) {
@@ -107,34 +84,7 @@ public class Counter {
 
 
     public static void countClassMethod(Path parseOutputPath, String outputCsvPath) throws IOException {
-        Map<String, List<String>> testMap = new HashMap<>();
-
-        // get all json files names "class.json"
-        List<String> classJsonFiles = Files.walk(parseOutputPath)
-                .filter(Files::isRegularFile)
-                .map(Path::toString)
-                .filter(f -> f.endsWith("class.json"))
-                .collect(Collectors.toList());
-
-        for (String classJsonFile : classJsonFiles) {
-            File classInfoFile = new File(classJsonFile);
-            ClassInfo classInfo = GSON.fromJson(Files.readString(classInfoFile.toPath(), StandardCharsets.UTF_8), ClassInfo.class);
-
-            if (!filter(classInfo)) {
-                continue;
-            }
-
-            List<String> methodList = new ArrayList<>();
-            for (String mSig : classInfo.methodSigs.keySet()) {
-                MethodInfo methodInfo = getMethodInfo(parseOutputPath, classInfo, mSig);
-                if (!filter(methodInfo)) {
-                    continue;
-                }
-                methodList.add(mSig);
-            }
-
-            testMap.put(classInfo.fullClassName, methodList);
-        }
+        Map<String, List<String>> testMap = collectTestMap(parseOutputPath);
 
         // Write to CSV
         try (FileWriter csvWriter = new FileWriter(outputCsvPath)) {
@@ -159,7 +109,37 @@ public class Counter {
 
     public static int countMethod(Path tmpOutputPath) throws IOException {
         Path parseOutputPath = tmpOutputPath.resolve("class-info");
+        Map<String, List<String>> testMap = collectTestMap(parseOutputPath);
+
+        return testMap.values().stream().mapToInt(List::size).sum();
+    }
+
+    /**
+     * Collect the focal methods of each focal class, read from the packed store if present,
+     * otherwise by walking the json layout.
+     */
+    private static Map<String, List<String>> collectTestMap(Path parseOutputPath) throws IOException {
         Map<String, List<String>> testMap = new HashMap<>();
+        if (PackedInfoStore.exists(parseOutputPath)) {
+            try (PackedInfoStore store = PackedInfoStore.openReader(parseOutputPath)) {
+                for (String className : store.getClassNames()) {
+                    ClassInfo classInfo = store.getClassInfo(className);
+                    if (!filter(classInfo)) {
+                        continue;
+                    }
+                    List<String> methodList = new ArrayList<>();
+                    for (String mSig : classInfo.methodSigs.keySet()) {
+                        if (!filter(store.getMethodInfo(className, mSig))) {
+                            continue;
+                        }
+                        methodList.add(mSig);
+                    }
+                    testMap.put(classInfo.fullClassName, methodList);
+                }
+            }
+            return testMap;
+        }
+
         // get all json files names "class.json"
         List<String> classJsonFiles = Files.walk(parseOutputPath)
                 .filter(Files::isRegularFile)
@@ -184,8 +164,7 @@ public class Counter {
             }
             testMap.put(classInfo.fullClassName, methodList);
         }
-
-        return testMap.values().stream().mapToInt(List::size).sum();
+        return testMap;
     }
 
     public static MethodInfo getMethodInfo(Path parseOutputPath, ClassInfo info, String mSig) throws IOException {
@@ -0,0 +1,42 @@
+package zju.cst.aces.util;
+
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Summary listener that also records, while the test runs, the lines of the test class
+ * in the stack traces of the failures, returned with the summary by {@link #getFailureLineSummary()}.
+ */
+public class FailureLineListener extends SummaryGeneratingListener {
+
+    private final String fullTestName;
+    private final List<Integer> errorLines = Collections.synchronizedList(new ArrayList<>());
+
+    public FailureLineListener(String fullTestName) {
+        this.fullTestName = fullTestName;
+    }
+
+    @Override
+    public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+        super.executionFinished(testIdentifier, testExecutionResult);
+        if (testExecutionResult.getStatus() != TestExecutionResult.Status.FAILED) {
+            return;
+        }
+        testExecutionResult.getThrowable().ifPresent(throwable -> {
+            for (StackTraceElement st : throwable.getStackTrace()) {
+                if (st.getClassName().contains(fullTestName)) {
+                    errorLines.add(st.getLineNumber());
+                }
+            }
+        });
+    }
+
+    public FailureLineSummary getFailureLineSummary() {
+        return new FailureLineSummary(getSummary(), fullTestName, new ArrayList<>(errorLines));
+    }
+}
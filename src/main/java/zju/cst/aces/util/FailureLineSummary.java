@@ -0,0 +1,126 @@
+package zju.cst.aces.util;
+
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Summary of a test executed in this JVM, with the lines of the test class in the stack traces
+ * of the failures, recorded by a {@link FailureLineListener} while the test ran.
+ */
+public class FailureLineSummary implements TestExecutionSummary {
+    private final TestExecutionSummary summary;
+    private final String fullTestName;
+    private final List<Integer> errorLines;
+
+    public FailureLineSummary(TestExecutionSummary summary, String fullTestName, List<Integer> errorLines) {
+        this.summary = summary;
+        this.fullTestName = fullTestName;
+        this.errorLines = errorLines;
+    }
+
+    public String getFullTestName() {
+        return fullTestName;
+    }
+
+    public List<Integer> getErrorLines() {
+        return new ArrayList<>(errorLines);
+    }
+
+    @Override
+    public long getTimeStarted() {
+        return summary.getTimeStarted();
+    }
+
+    @Override
+    public long getTimeFinished() {
+        return summary.getTimeFinished();
+    }
+
+    @Override
+    public long getTotalFailureCount() {
+        return summary.getTotalFailureCount();
+    }
+
+    @Override
+    public long getContainersFoundCount() {
+        return summary.getContainersFoundCount();
+    }
+
+    @Override
+    public long getContainersStartedCount() {
+        return summary.getContainersStartedCount();
+    }
+
+    @Override
+    public long getContainersSkippedCount() {
+        return summary.getContainersSkippedCount();
+    }
+
+    @Override
+    public long getContainersAbortedCount() {
+        return summary.getContainersAbortedCount();
+    }
+
+    @Override
+    public long getContainersSucceededCount() {
+        return summary.getContainersSucceededCount();
+    }
+
+    @Override
+    public long getContainersFailedCount() {
+        return summary.getContainersFailedCount();
+    }
+
+    @Override
+    public long getTestsFoundCount() {
+        return summary.getTestsFoundCount();
+    }
+
+    @Override
+    public long getTestsStartedCount() {
+        return summary.getTestsStartedCount();
+    }
+
+    @Override
+    public long getTestsSkippedCount() {
+        return summary.getTestsSkippedCount();
+    }
+
+    @Override
+    public long getTestsAbortedCount() {
+        return summary.getTestsAbortedCount();
+    }
+
+    @Override
+    public long getTestsSucceededCount() {
+        return summary.getTestsSucceededCount();
+    }
+
+    @Override
+    public long getTestsFailedCount() {
+        return summary.getTestsFailedCount();
+    }
+
+    @Override
+    public void printTo(PrintWriter writer) {
+        summary.printTo(writer);
+    }
+
+    @Override
+    public void printFailuresTo(PrintWriter writer) {
+        summary.printFailuresTo(writer);
+    }
+
+    @Override
+    public void printFailuresTo(PrintWriter writer, int maxStackTraceLines) {
+        summary.printFailuresTo(writer, maxStackTraceLines);
+    }
+
+    @Override
+    public List<Failure> getFailures() {
+        return summary.getFailures();
+    }
+}
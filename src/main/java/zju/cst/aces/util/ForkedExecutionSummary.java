@@ -0,0 +1,290 @@
+package zju.cst.aces.util;
+
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.support.descriptor.AbstractTestDescriptor;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.EngineDescriptor;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Summary of a test executed by a {@link TestWorker}, sent back to the plugin JVM.
+ * The exceptions are replaced by {@link ForkedTestException}s, so the exception classes of the
+ * tested project are not needed to read the summary.
+ */
+public class ForkedExecutionSummary implements TestExecutionSummary, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final String ENGINE_ID = "chatunitest-worker";
+
+    private long timeStarted;
+    private long timeFinished;
+    private long containersFound;
+    private long containersStarted;
+    private long containersSkipped;
+    private long containersAborted;
+    private long containersSucceeded;
+    private long containersFailed;
+    private long testsFound;
+    private long testsStarted;
+    private long testsSkipped;
+    private long testsAborted;
+    private long testsSucceeded;
+    private long testsFailed;
+    private final List<Failure> failures = new ArrayList<>();
+
+    public static ForkedExecutionSummary of(TestExecutionSummary summary) {
+        ForkedExecutionSummary forked = new ForkedExecutionSummary();
+        forked.timeStarted = summary.getTimeStarted();
+        forked.timeFinished = summary.getTimeFinished();
+        forked.containersFound = summary.getContainersFoundCount();
+        forked.containersStarted = summary.getContainersStartedCount();
+        forked.containersSkipped = summary.getContainersSkippedCount();
+        forked.containersAborted = summary.getContainersAbortedCount();
+        forked.containersSucceeded = summary.getContainersSucceededCount();
+        forked.containersFailed = summary.getContainersFailedCount();
+        forked.testsFound = summary.getTestsFoundCount();
+        forked.testsStarted = summary.getTestsStartedCount();
+        forked.testsSkipped = summary.getTestsSkippedCount();
+        forked.testsAborted = summary.getTestsAbortedCount();
+        forked.testsSucceeded = summary.getTestsSucceededCount();
+        forked.testsFailed = summary.getTestsFailedCount();
+        for (Failure failure : summary.getFailures()) {
+            forked.failures.add(new ForkedFailure(portable(failure.getTestIdentifier()), ForkedTestException.of(failure.getException())));
+        }
+        return forked;
+    }
+
+    /**
+     * Summary of a test class whose execution did not finish, e.g. the worker timed out or exited.
+     */
+    public static ForkedExecutionSummary failed(String fullTestName, Throwable cause) {
+        ForkedExecutionSummary summary = new ForkedExecutionSummary();
+        summary.timeStarted = System.currentTimeMillis();
+        summary.timeFinished = summary.timeStarted;
+        summary.testsFound = 1;
+        summary.testsStarted = 1;
+        // the failure is reported as an error of the test class, not as an assertion error
+        cause.setStackTrace(new StackTraceElement[]{new StackTraceElement(fullTestName, "execute", null, -1)});
+        summary.addFailure(identifier(fullTestName), cause);
+        return summary;
+    }
+
+    /**
+     * Record a failure of a test that did not finish.
+     */
+    public void addFailure(TestIdentifier testIdentifier, Throwable cause) {
+        testsFailed++;
+        timeFinished = System.currentTimeMillis();
+        failures.add(new ForkedFailure(portable(testIdentifier), ForkedTestException.of(cause)));
+    }
+
+    /**
+     * Copy of the identifier whose source only refers to the test class by name,
+     * the sources of JUnit may hold the test class itself, which the plugin JVM cannot load.
+     */
+    static TestIdentifier portable(TestIdentifier testIdentifier) {
+        TestSource source = testIdentifier.getSource().orElse(null);
+        if (source instanceof ClassSource) {
+            source = ClassSource.from(((ClassSource) source).getClassName(), ((ClassSource) source).getPosition().orElse(null));
+        } else if (source instanceof MethodSource) {
+            MethodSource methodSource = (MethodSource) source;
+            source = MethodSource.from(methodSource.getClassName(), methodSource.getMethodName(), methodSource.getMethodParameterTypes());
+        }
+        AbstractTestDescriptor descriptor = new AbstractTestDescriptor(UniqueId.parse(testIdentifier.getUniqueId()),
+                testIdentifier.getDisplayName(), source) {
+            @Override
+            public Type getType() {
+                return testIdentifier.getType();
+            }
+
+            @Override
+            public String getLegacyReportingName() {
+                return testIdentifier.getLegacyReportingName();
+            }
+        };
+        // identifiers without a parent cannot be serialized
+        UniqueId parentId = testIdentifier.getParentId().map(UniqueId::parse).orElse(UniqueId.forEngine(ENGINE_ID));
+        descriptor.setParent(new EngineDescriptor(parentId, parentId.toString()));
+        return TestIdentifier.from(descriptor);
+    }
+
+    /**
+     * Identifier of the test class, for failures that cannot be attributed to a test method.
+     */
+    public static TestIdentifier identifier(String fullTestName) {
+        UniqueId uniqueId = UniqueId.forEngine(ENGINE_ID).append("class", fullTestName);
+        AbstractTestDescriptor descriptor = new AbstractTestDescriptor(uniqueId, fullTestName, ClassSource.from(fullTestName)) {
+            @Override
+            public Type getType() {
+                return Type.TEST;
+            }
+        };
+        descriptor.setParent(new EngineDescriptor(UniqueId.forEngine(ENGINE_ID), ENGINE_ID));
+        return TestIdentifier.from(descriptor);
+    }
+
+    @Override
+    public long getTimeStarted() {
+        return timeStarted;
+    }
+
+    @Override
+    public long getTimeFinished() {
+        return timeFinished;
+    }
+
+    @Override
+    public long getTotalFailureCount() {
+        return failures.size();
+    }
+
+    @Override
+    public long getContainersFoundCount() {
+        return containersFound;
+    }
+
+    @Override
+    public long getContainersStartedCount() {
+        return containersStarted;
+    }
+
+    @Override
+    public long getContainersSkippedCount() {
+        return containersSkipped;
+    }
+
+    @Override
+    public long getContainersAbortedCount() {
+        return containersAborted;
+    }
+
+    @Override
+    public long getContainersSucceededCount() {
+        return containersSucceeded;
+    }
+
+    @Override
+    public long getContainersFailedCount() {
+        return containersFailed;
+    }
+
+    @Override
+    public long getTestsFoundCount() {
+        return testsFound;
+    }
+
+    @Override
+    public long getTestsStartedCount() {
+        return testsStarted;
+    }
+
+    @Override
+    public long getTestsSkippedCount() {
+        return testsSkipped;
+    }
+
+    @Override
+    public long getTestsAbortedCount() {
+        return testsAborted;
+    }
+
+    @Override
+    public long getTestsSucceededCount() {
+        return testsSucceeded;
+    }
+
+    @Override
+    public long getTestsFailedCount() {
+        return testsFailed;
+    }
+
+    @Override
+    public void printTo(PrintWriter writer) {
+        writer.printf("Test run finished after %d ms%n", timeFinished - timeStarted);
+        writer.printf("[%10d containers found ]%n[%10d containers skipped ]%n[%10d containers started ]%n"
+                        + "[%10d containers aborted ]%n[%10d containers successful ]%n[%10d containers failed ]%n",
+                containersFound, containersSkipped, containersStarted, containersAborted, containersSucceeded, containersFailed);
+        writer.printf("[%10d tests found ]%n[%10d tests skipped ]%n[%10d tests started ]%n"
+                        + "[%10d tests aborted ]%n[%10d tests successful ]%n[%10d tests failed ]%n",
+                testsFound, testsSkipped, testsStarted, testsAborted, testsSucceeded, testsFailed);
+        writer.flush();
+    }
+
+    @Override
+    public void printFailuresTo(PrintWriter writer) {
+        printFailuresTo(writer, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void printFailuresTo(PrintWriter writer, int maxStackTraceLines) {
+        if (failures.isEmpty()) {
+            return;
+        }
+        writer.printf("%nFailures (%d):%n", failures.size());
+        for (Failure failure : failures) {
+            writer.printf("  %s%n    => %s%n", failure.getTestIdentifier().getDisplayName(), failure.getException());
+            StackTraceElement[] stackTrace = failure.getException().getStackTrace();
+            for (int i = 0; i < Math.min(maxStackTraceLines, stackTrace.length); i++) {
+                writer.printf("       %s%n", stackTrace[i]);
+            }
+        }
+        writer.flush();
+    }
+
+    @Override
+    public List<Failure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    private static class ForkedFailure implements Failure {
+        private static final long serialVersionUID = 1L;
+        private final TestIdentifier testIdentifier;
+        private final Throwable exception;
+
+        ForkedFailure(TestIdentifier testIdentifier, Throwable exception) {
+            this.testIdentifier = testIdentifier;
+            this.exception = exception;
+        }
+
+        @Override
+        public TestIdentifier getTestIdentifier() {
+            return testIdentifier;
+        }
+
+        @Override
+        public Throwable getException() {
+            return exception;
+        }
+    }
+
+    /**
+     * Copy of an exception thrown in the worker, {@link #toString()} and the stack trace are the ones of the original.
+     */
+    public static class ForkedTestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final String description;
+
+        private ForkedTestException(Throwable original) {
+            super(original.getMessage(), original.getCause() == null ? null : of(original.getCause()), false, true);
+            this.description = original.toString();
+            setStackTrace(original.getStackTrace());
+        }
+
+        static ForkedTestException of(Throwable throwable) {
+            return throwable instanceof ForkedTestException ? (ForkedTestException) throwable : new ForkedTestException(throwable);
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package zju.cst.aces.util;
+
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the generated tests in a pool of forked JVMs instead of the plugin JVM.
+ *
+ * <P>
+ * A test that hangs, calls {@code System.exit} or corrupts static state only takes its worker down.
+ * Workers are reused between tests, so the JVM startup is paid once per worker, and are recycled after
+ * {@code maxExecutions} tests or when they fail. Each test class has a timeout, the worker reports the
+ * stack of a test that runs longer, a worker that does not answer shortly after is killed.
+ * </P>
+ */
+public class ForkedTestExecutor {
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60_000;
+    public static final int DEFAULT_MAX_EXECUTIONS = 100;
+    /** Time given to a worker to report a timed out test before it is killed. */
+    private static final long KILL_GRACE_MILLIS = 10_000;
+    /** Executors not closed yet, stopped by a single shutdown hook. */
+    private static final Set<ForkedTestExecutor> OPEN = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (ForkedTestExecutor executor : OPEN) {
+                executor.close();
+            }
+        }));
+    }
+
+    private final List<String> classpathElements;
+    private final long timeoutMillis;
+    private final int maxExecutions;
+    private final Semaphore permits;
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService watchdog;
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger recycled = new AtomicInteger();
+    private Path classpathFile;
+
+    public ForkedTestExecutor(List<String> classpathElements, int maxWorkers, long timeoutMillis, int maxExecutions) {
+        this.classpathElements = classpathElements;
+        this.permits = new Semaphore(Math.max(1, maxWorkers));
+        this.timeoutMillis = timeoutMillis > 0 ? timeoutMillis : DEFAULT_TIMEOUT_MILLIS;
+        this.maxExecutions = maxExecutions > 0 ? maxExecutions : DEFAULT_MAX_EXECUTIONS;
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chatunitest-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        OPEN.add(this);
+    }
+
+    /**
+     * Execute the test class in a worker.
+     * @param classes bytecode of the test classes compiled in memory, keyed by binary class name
+     * @param buildFolder folder of the test classes compiled to disk
+     */
+    public TestExecutionSummary execute(String fullTestName, Map<String, byte[]> classes, File buildFolder) {
+        permits.acquireUninterruptibly();
+        Worker worker = idle.poll();
+        try {
+            if (worker == null) {
+                worker = startWorker();
+            }
+            TestWorker.Response response;
+            // a cancelled attempt does not wait for its test, the worker is killed and replaced
+            CancellationToken.Registration registration = CancellationToken.register(worker::kill);
+            try {
+                response = worker.run(new TestWorker.Request(fullTestName, new HashMap<>(classes),
+                        buildFolder == null ? null : buildFolder.getAbsolutePath()));
+            } catch (IOException | ClassNotFoundException e) {
+                Exception cause = CancellationToken.isCurrentCancelled() ? new CancellationException("Test execution cancelled")
+                        : worker.killed ? new TimeoutException("Test execution timed out after " + timeoutMillis + " ms")
+                        : new IllegalStateException("Test worker exited with code " + worker.exitCode() + ": " + e);
+                recycle(worker);
+                worker = null;
+                return ForkedExecutionSummary.failed(fullTestName, cause);
+            } finally {
+                registration.close();
+            }
+            // the cancellation may kill the worker after its answer arrived, it must not go back to the pool
+            if (worker.killed || response.isRecycle() || ++worker.executions >= maxExecutions) {
+                recycle(worker);
+                worker = null;
+            }
+            if (response.getError() != null) {
+                throw new RuntimeException("In ForkedTestExecutor.execute: " + response.getError());
+            }
+            return response.getSummary();
+        } finally {
+            if (worker != null) {
+                idle.offer(worker);
+            }
+            permits.release();
+        }
+    }
+
+    private Worker startWorker() {
+        try {
+            Worker worker = new Worker();
+            workers.add(worker);
+            started.incrementAndGet();
+            return worker;
+        } catch (IOException e) {
+            throw new RuntimeException("In ForkedTestExecutor.startWorker: " + e);
+        }
+    }
+
+    private void recycle(Worker worker) {
+        workers.remove(worker);
+        recycled.incrementAndGet();
+        worker.destroy();
+    }
+
+    /**
+     * Stop all workers.
+     */
+    public void close() {
+        OPEN.remove(this);
+        for (Worker worker : workers) {
+            worker.destroy();
+        }
+        workers.clear();
+        idle.clear();
+    }
+
+    public int getStartedCount() {
+        return started.get();
+    }
+
+    public int getRecycledCount() {
+        return recycled.get();
+    }
+
+    private synchronized Path getClasspathFile() throws IOException {
+        if (classpathFile == null) {
+            classpathFile = Files.createTempFile("chatunitest-classpath", ".txt");
+            classpathFile.toFile().deleteOnExit();
+            Files.write(classpathFile, classpathElements);
+        }
+        return classpathFile;
+    }
+
+    /**
+     * Classpath of the worker JVM: the classes of this plugin and its dependencies, such as the JUnit engines.
+     */
+    static String getWorkerClasspath() {
+        Set<String> entries = new LinkedHashSet<>();
+        for (ClassLoader loader = ForkedTestExecutor.class.getClassLoader(); loader != null; loader = loader.getParent()) {
+            if (loader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) loader).getURLs()) {
+                    try {
+                        entries.add(Paths.get(url.toURI()).toString());
+                    } catch (Exception ignored) {
+                    }
+                }
+            }
+        }
+        for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                entries.add(entry);
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private class Worker {
+        final Process process;
+        final ObjectOutputStream out;
+        final ObjectInputStream in;
+        int executions = 0;
+        volatile boolean killed = false;
+
+        Worker() throws IOException {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            ProcessBuilder builder = new ProcessBuilder(java, "-cp", getWorkerClasspath(), TestWorker.class.getName(),
+                    getClasspathFile().toString(), String.valueOf(timeoutMillis));
+            builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+            process = builder.start();
+            ScheduledFuture<?> kill = watchdog.schedule(this::kill, timeoutMillis + KILL_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+            try {
+                out = new ObjectOutputStream(new BufferedOutputStream(process.getOutputStream()));
+                out.flush();
+                in = new ObjectInputStream(new BufferedInputStream(process.getInputStream()));
+            } catch (IOException e) {
+                process.destroyForcibly();
+                throw e;
+            } finally {
+                kill.cancel(false);
+            }
+        }
+
+        TestWorker.Response run(TestWorker.Request request) throws IOException, ClassNotFoundException {
+            ScheduledFuture<?> kill = watchdog.schedule(this::kill, timeoutMillis + KILL_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+            try {
+                out.writeObject(request);
+                out.flush();
+                out.reset();
+                return (TestWorker.Response) in.readObject();
+            } finally {
+                kill.cancel(false);
+            }
+        }
+
+        void kill() {
+            killed = true;
+            process.destroyForcibly();
+        }
+
+        void destroy() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            process.destroyForcibly();
+        }
+
+        String exitCode() {
+            try {
+                return process.waitFor(1, TimeUnit.SECONDS) ? String.valueOf(process.exitValue()) : "unknown";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "unknown";
+            }
+        }
+    }
+}
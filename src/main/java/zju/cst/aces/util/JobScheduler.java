@@ -0,0 +1,237 @@
+package zju.cst.aces.util;
+
+import zju.cst.aces.api.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One work-stealing pool running the class, method and attempt jobs of a run, instead of a thread pool per level.
+ *
+ * <P>
+ * At most {@code parallelism} jobs run at the same time. Class jobs are started in submission order,
+ * the method and attempt jobs forked by a job are run by its worker first and stolen by idle workers,
+ * so a class with many methods keeps all workers busy. A job waiting for the jobs it forked runs them
+ * or other pending jobs meanwhile, so nested waits do not hold threads.
+ * The pool threads are daemons, a single shutdown hook stops the pending jobs.
+ * </P>
+ * <P>
+ * In virtual thread mode (JDK 21 or later) each job runs on its own virtual thread, so jobs blocked on
+ * the LLM do not hold platform threads, and cpu-bound stages passed to {@link #runBounded(Callable)} run
+ * on a pool of one platform thread per core. On older runtimes the work-stealing pool is used.
+ * </P>
+ */
+public class JobScheduler {
+    /** Schedulers not shut down yet, stopped by the single shutdown hook. */
+    private static final Set<JobScheduler> OPEN = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (JobScheduler scheduler : OPEN) {
+                scheduler.shutdownNow();
+            }
+        }));
+    }
+
+    private final ForkJoinPool pool;
+    private final Logger logger;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /** Executor of one virtual thread per job, null in work-stealing mode. */
+    private final ExecutorService virtualExecutor;
+    /** Platform threads running the cpu-bound stages of virtual thread jobs. */
+    private final ExecutorService boundedExecutor;
+
+    public JobScheduler(int parallelism, Logger logger) {
+        this(parallelism, false, logger);
+    }
+
+    public JobScheduler(int parallelism, boolean virtualThreads, Logger logger) {
+        this.logger = logger;
+        ExecutorService virtual = virtualThreads ? newVirtualThreadExecutor() : null;
+        if (virtualThreads && virtual == null) {
+            logger.warn("In JobScheduler: virtual threads need Java 21 or later, using " + parallelism + " platform threads");
+        }
+        this.virtualExecutor = virtual;
+        this.boundedExecutor = virtual == null ? null : Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), platformThreadFactory("chatunitest-cpu"));
+        int size = Math.max(1, parallelism);
+        // the jobs use the plugin classes, e.g. to load the junit engines, not the system class loader
+        ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ForkJoinPool(size, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("chatunitest-job-" + count.incrementAndGet());
+            thread.setContextClassLoader(contextLoader);
+            return thread;
+        }, null, false, 0, size, 1, p -> true, 60, TimeUnit.SECONDS);
+        OPEN.add(this);
+    }
+
+    /**
+     * Run the jobs and wait for all of them. A failed job is logged and its result is null.
+     * @return the results in the order of the jobs
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> jobs) {
+        if (virtualExecutor != null) {
+            return invokeAllVirtual(jobs);
+        }
+        boolean inPool = ForkJoinTask.getPool() == pool;
+        List<ForkJoinTask<T>> tasks = new ArrayList<>();
+        for (Callable<T> job : jobs) {
+            ForkJoinTask<T> task = ForkJoinTask.adapt(job);
+            tasks.add(inPool ? task.fork() : pool.submit(task));
+            submitted.incrementAndGet();
+        }
+        List<T> results = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            results.add(null);
+        }
+        // forked jobs are popped last in first out, so join them in that order
+        for (int i = tasks.size() - 1; i >= 0; i--) {
+            try {
+                results.set(i, tasks.get(i).join());
+                completed.incrementAndGet();
+            } catch (CancellationException e) {
+                failed.incrementAndGet();
+                logger.warn("In JobScheduler.invokeAll: job cancelled");
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                logger.error("In JobScheduler.invokeAll: " + (e.getCause() != null ? e.getCause() : e));
+            }
+        }
+        return results;
+    }
+
+    private <T> List<T> invokeAllVirtual(List<? extends Callable<T>> jobs) {
+        List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> job : jobs) {
+            futures.add(virtualExecutor.submit(job));
+            submitted.incrementAndGet();
+        }
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            T result = null;
+            try {
+                result = future.get();
+                completed.incrementAndGet();
+            } catch (InterruptedException e) {
+                failed.incrementAndGet();
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+            } catch (CancellationException e) {
+                failed.incrementAndGet();
+                logger.warn("In JobScheduler.invokeAll: job cancelled");
+            } catch (ExecutionException e) {
+                failed.incrementAndGet();
+                logger.error("In JobScheduler.invokeAll: " + e.getCause());
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Run a cpu-bound stage of a job, such as compiling and executing a test.
+     * In virtual thread mode it waits for a platform thread of the bounded pool, otherwise it runs in the calling thread,
+     * which is already one of the bounded workers.
+     */
+    public <T> T runBounded(Callable<T> stage) {
+        if (boundedExecutor == null) {
+            try {
+                return stage.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("In JobScheduler.runBounded: " + e);
+            }
+        }
+        Future<T> future = boundedExecutor.submit(stage);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("In JobScheduler.runBounded: " + e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("In JobScheduler.runBounded: " + e.getCause());
+        }
+    }
+
+    /**
+     * Cancel the pending jobs and interrupt the running ones.
+     */
+    public void shutdownNow() {
+        OPEN.remove(this);
+        pool.shutdownNow();
+        if (virtualExecutor != null) {
+            virtualExecutor.shutdownNow();
+            boundedExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isVirtual() {
+        return virtualExecutor != null;
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}, looked up by reflection so the code still compiles and runs
+     * on Java 11.
+     * @return the executor, or null if the runtime has no virtual threads
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory(String name) {
+        ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(contextLoader);
+            return thread;
+        };
+    }
+
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public int getActiveCount() {
+        return pool.getActiveThreadCount();
+    }
+
+    public long getQueuedCount() {
+        return pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+}
@@ -0,0 +1,31 @@
+package zju.cst.aces.util;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+
+/**
+ * Class loader that defines the compiled test classes straight from their bytecode,
+ * other classes are loaded from the urls.
+ */
+public class MemoryClassLoader extends URLClassLoader {
+
+    private final Map<String, byte[]> classes;
+
+    /**
+     * @param classes bytecode keyed by binary class name, see {@link MemoryFileManager#getOutputs()}
+     */
+    public MemoryClassLoader(URL[] urls, ClassLoader parent, Map<String, byte[]> classes) {
+        super(urls, parent);
+        this.classes = classes;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = classes.get(name);
+        if (bytes != null) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+        return super.findClass(name);
+    }
+}
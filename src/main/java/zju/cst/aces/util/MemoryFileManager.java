@@ -0,0 +1,61 @@
+package zju.cst.aces.util;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * File manager that keeps the class files written by javac in memory instead of the class output folder.
+ * Everything else, such as the dependency classpath, is delegated to the wrapped standard file manager,
+ * so its opened archives are reused across compilations.
+ */
+public class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    private final Map<String, byte[]> outputs = new LinkedHashMap<>();
+
+    public MemoryFileManager(StandardJavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                               FileObject sibling) throws IOException {
+        if (location != StandardLocation.CLASS_OUTPUT || kind != JavaFileObject.Kind.CLASS) {
+            return super.getJavaFileForOutput(location, className, kind, sibling);
+        }
+        return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+            @Override
+            public OutputStream openOutputStream() {
+                return new ByteArrayOutputStream() {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        synchronized (outputs) {
+                            outputs.put(className, toByteArray());
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return the class files written so far, keyed by binary class name
+     */
+    public Map<String, byte[]> getOutputs() {
+        synchronized (outputs) {
+            return new LinkedHashMap<>(outputs);
+        }
+    }
+
+    /**
+     * The wrapped file manager is shared with other compilations and stays open.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,176 @@
+package zju.cst.aces.util;
+
+import zju.cst.aces.api.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stages with their own workers and bounded queues, so work items of different methods overlap,
+ * e.g. the LLM requests of some attempts run while others are compiled and executed.
+ *
+ * <P>
+ * A work item is submitted to a stage and submits its next step to the next stage when done.
+ * At most {@code capacity} items are in the pipeline: an item needs a permit from {@link #acquire()}
+ * before its first step and returns it with {@link #release()} after its last one. As every queue
+ * holds {@code capacity} items, a stage never blocks on the next one, even when items go back to
+ * an earlier stage. Each stage records its busy time and queueing delay to size the workers of the stages.
+ * </P>
+ */
+public class StagePipeline {
+    /** Stage building the prompts and generating or repairing the tests with the LLM. */
+    public static final String GENERATION = "generation";
+    /** Stage compiling and executing the tests. */
+    public static final String VALIDATION = "validation";
+
+    private final int capacity;
+    private final Semaphore permits;
+    private final Logger logger;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+    public StagePipeline(int capacity, Logger logger) {
+        this.capacity = Math.max(1, capacity);
+        this.permits = new Semaphore(this.capacity);
+        this.logger = logger;
+    }
+
+    public synchronized Stage addStage(String name, int workers) {
+        Stage stage = new Stage(name, Math.max(1, workers));
+        stages.put(name, stage);
+        return stage;
+    }
+
+    public synchronized Stage getStage(String name) {
+        Stage stage = stages.get(name);
+        if (stage == null) {
+            throw new IllegalArgumentException("In StagePipeline.getStage: no stage " + name);
+        }
+        return stage;
+    }
+
+    /**
+     * Wait for room for a new item, must not be called by the workers of a stage.
+     */
+    public void acquire() {
+        permits.acquireUninterruptibly();
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getInFlight() {
+        return capacity - permits.availablePermits();
+    }
+
+    /**
+     * Stop the workers of all stages, the queued steps are dropped.
+     */
+    public synchronized void shutdownNow() {
+        stages.values().forEach(stage -> stage.executor.shutdownNow());
+    }
+
+    /**
+     * Workers, utilization, processed steps, mean queueing delay and queue depth of each stage.
+     */
+    public synchronized String report() {
+        StringBuilder sb = new StringBuilder("Pipeline stages (" + getInFlight() + "/" + capacity + " in flight):");
+        for (Stage stage : stages.values()) {
+            sb.append(String.format("%n %s >>> %d workers, %.0f%% busy, %d processed, %.0f ms mean wait, queue %d (max %d)",
+                    stage.name, stage.workers, stage.getUtilization() * 100, stage.getProcessedCount(),
+                    stage.getMeanWaitMillis(), stage.getQueueDepth(), stage.getMaxQueueDepth()));
+        }
+        return sb.toString();
+    }
+
+    public class Stage {
+        private final String name;
+        private final int workers;
+        private final ThreadPoolExecutor executor;
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder processed = new LongAdder();
+        private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+        private Stage(String name, int workers) {
+            this.name = name;
+            this.workers = workers;
+            ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+            AtomicInteger count = new AtomicInteger();
+            // the queue is never full while the items hold permits, running the step in place is a safety net
+            this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(capacity), r -> {
+                Thread thread = new Thread(r, "chatunitest-" + name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setContextClassLoader(contextLoader);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        /**
+         * Queue a step of an item, a failed step is logged.
+         */
+        public void submit(Runnable step) {
+            long queued = System.nanoTime();
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                waitNanos.add(start - queued);
+                try {
+                    step.run();
+                } catch (RuntimeException e) {
+                    logger.error("In StagePipeline." + name + ": " + e);
+                } finally {
+                    busyNanos.add(System.nanoTime() - start);
+                    processed.increment();
+                }
+            });
+            maxQueueDepth.accumulateAndGet(executor.getQueue().size(), Math::max);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        /**
+         * Share of the worker time spent on steps since the pipeline was created.
+         */
+        public double getUtilization() {
+            long elapsed = System.nanoTime() - startNanos;
+            return elapsed <= 0 ? 0 : Math.min(1.0, (double) busyNanos.sum() / ((double) elapsed * workers));
+        }
+
+        public long getProcessedCount() {
+            return processed.sum();
+        }
+
+        public double getMeanWaitMillis() {
+            long count = processed.sum();
+            return count == 0 ? 0 : waitNanos.sum() / 1e6 / count;
+        }
+
+        public int getQueueDepth() {
+            return executor.getQueue().size();
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth.get();
+        }
+
+        public int getActiveCount() {
+            return executor.getActiveCount();
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package zju.cst.aces.util;
 
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
 import lombok.Data;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.DefaultProjectBuildingRequest;
@@ -19,6 +22,7 @@ import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
 import org.junit.platform.launcher.listeners.TestExecutionSummary;
 import zju.cst.aces.dto.PromptInfo;
 import zju.cst.aces.dto.TestMessage;
+import zju.cst.aces.dto.TestSource;
 import zju.cst.aces.parser.ProjectParser;
 
 import javax.tools.*;
@@ -31,10 +35,15 @@ import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.CharBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
 
@@ -43,14 +52,47 @@ public class TestCompiler {
     public static String OS = System.getProperty("os.name").toLowerCase();
     public static File srcTestFolder = new File("src" + File.separator + "test" + File.separator + "java");
     public static File testBackupFolder = new File("src" + File.separator + "backup");
-    public static File testOutputFolder;
-    public static File buildFolder;
-    public static File targetTestsFolder;
-    public static File buildBackupFolder;
+    public File testOutputFolder;
+    public File buildFolder;
+    public File targetTestsFolder;
+    public File buildBackupFolder;
     public List<String> classpathElements;
     public String testName;
     public String fullTestName;
     public String code;
+    /** Keep the compiled test classes in memory instead of writing them to the build folder. */
+    public boolean inMemory = false;
+    /**
+     * Give each running javac task its own output folder under the build folder, so concurrent validations
+     * do not overwrite each other's class files. There are at most as many folders as compile permits.
+     */
+    public boolean namespaced = false;
+    private final AtomicInteger workerCount = new AtomicInteger();
+    /** Output folders not used by a running javac task. */
+    private final Deque<File> idleWorkerFolders = new ConcurrentLinkedDeque<>();
+    /**
+     * Folder of the last successful compile of each test class, keyed by full class name,
+     * the rounds of a test may compile on different threads.
+     */
+    private final Map<String, File> compiledFolders = new ConcurrentHashMap<>();
+    /** Sources waiting for a javac task, see {@link #compileTest(TestSource)}. */
+    private final Queue<PendingSource> pendingSources = new ConcurrentLinkedQueue<>();
+    /** Javac tasks running at the same time, javac is cpu-bound so more tasks than cores do not help. */
+    private final Semaphore compilePermits = new Semaphore(Runtime.getRuntime().availableProcessors());
+    private static final long BATCH_WAIT_MILLIS = 20;
+    /** Diagnostic code of a class declared by two sources of a javac task. */
+    private static final String DUPLICATE_CLASS = "compiler.err.duplicate.class";
+    /** Run the tests in forked JVMs, null to run them in this JVM. */
+    public ForkedTestExecutor forkedExecutor;
+    private static final JavaCompiler COMPILER = ToolProvider.getSystemJavaCompiler();
+    /** Idle file managers, their classpath is set once and their opened archives are reused. */
+    private final Deque<StandardJavaFileManager> fileManagers = new ConcurrentLinkedDeque<>();
+    /** Classes compiled in memory and not executed yet, keyed by binary name. */
+    private final Map<String, byte[]> compiledClasses = new ConcurrentHashMap<>();
+    private List<File> classpathFiles;
+    private URLClassLoader sharedLoader;
+    /** Idle launchers, the test engines are discovered once per launcher instead of once per execution. */
+    private final Deque<Launcher> launchers = new ConcurrentLinkedDeque<>();
 
     public TestCompiler(Path testOutputPath, Path compileOutputPath, Path targetPath, List<String> classpathElements) {
         this.code = "";
@@ -69,33 +111,49 @@ public class TestCompiler {
         this.classpathElements = classpathElements;
     }
 
+    /**
+     * Execute the compiled test. The classes of a test compiled in memory are written to the folder
+     * it was compiled to after the execution, so they are not kept in memory for the rest of the run.
+     */
     public TestExecutionSummary executeTest(String fullTestName) {
         this.fullTestName = fullTestName;
+        Map<String, byte[]> classes = new HashMap<>();
+        compiledClasses.forEach((name, bytes) -> {
+            if (name.equals(fullTestName) || name.startsWith(fullTestName + "$")) {
+                classes.put(name, bytes);
+            }
+        });
         try {
-            List<URL> urls = new ArrayList<>();
-            for (String classpath : this.classpathElements) {
-                URL url = new File(classpath).toURI().toURL();
-                urls.add(url);
+            if (forkedExecutor != null) {
+                return forkedExecutor.execute(fullTestName, classes, getTestFolder(fullTestName));
             }
-            urls.add(this.buildFolder.toURI().toURL());
-//            urls.add(targetTestsFolder.toURI().toURL());
-
-            ClassLoader classLoader = new URLClassLoader(urls.toArray(new URL[0]), getClass().getClassLoader());
+            return executeInProcess(fullTestName, classes);
+        } finally {
+            writeCompiledClasses(classes);
+        }
+    }
 
+    private TestExecutionSummary executeInProcess(String fullTestName, Map<String, byte[]> classes) {
+        // the test classes get a small loader of their own, closed after the run,
+        // the project and its dependencies are loaded once by the shared parent
+        try (URLClassLoader classLoader = new MemoryClassLoader(getOutputUrls(fullTestName), getDependencyLoader(), classes)) {
             LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
                     .selectors(selectClass(classLoader.loadClass(fullTestName)))
                     .build();
 
-            Launcher launcher = LauncherFactory.create();
-
-            // Register a listener to collect test execution results.
-            SummaryGeneratingListener listener = new SummaryGeneratingListener();
-            launcher.registerTestExecutionListeners(listener);
-
-            launcher.execute(request);
+            // Collect test execution results and the error lines of the failures.
+            FailureLineListener listener = new FailureLineListener(fullTestName);
+            Launcher launcher = launchers.poll();
+            if (launcher == null) {
+                launcher = LauncherFactory.create();
+            }
+            try {
+                launcher.execute(request, listener);
+            } finally {
+                launchers.push(launcher);
+            }
 
-            TestExecutionSummary summary = listener.getSummary();
-            return summary;
+            return listener.getFailureLineSummary();
         } catch (Exception e) {
             throw new RuntimeException("In TestCompiler.executeTest: " + e);
         }
@@ -119,50 +177,377 @@ public class TestCompiler {
             throw new RuntimeException("In TestCompiler.compileTest: code is empty");
         }
         this.testName = className;
-        boolean result;
+        return compileTests(Collections.singletonList(new TestSource(code, className, outputPath, promptInfo))).get(0);
+    }
+
+    /**
+     * Compile a test source. While all javac tasks are busy, the sources of the other threads are queued and
+     * the next free caller compiles all of them with {@link #compileTests(List)}, so concurrent attempts share
+     * a javac task, and the classpath is loaded once for them, instead of waiting for a task each.
+     * Once the source is taken into the batch of another thread, the caller waits for that batch.
+     * @return whether the source compiled
+     */
+    public boolean compileTest(TestSource source) {
+        PendingSource pending = new PendingSource(source);
+        pendingSources.add(pending);
+        while (!pending.result.isDone() && pendingSources.contains(pending)) {
+            if (compilePermits.tryAcquire()) {
+                try {
+                    compilePending(pending);
+                } finally {
+                    compilePermits.release();
+                }
+                continue;
+            }
+            try {
+                pending.result.get(BATCH_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException ignored) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("In TestCompiler.compileTest: " + e);
+            }
+        }
+        try {
+            return pending.result.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new RuntimeException("In TestCompiler.compileTest: " + e.getCause());
+        }
+    }
+
+    private void compilePending(PendingSource own) {
+        List<PendingSource> batch = new ArrayList<>();
+        PendingSource pending;
+        while ((pending = pendingSources.poll()) != null) {
+            batch.add(pending);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<TestSource> sources = batch.stream().map(p -> p.source).collect(Collectors.toList());
+        try {
+            // the sources of other attempts are not aborted by the cancellation of the caller
+            List<Boolean> results = batch.size() == 1 && batch.get(0) == own ? compileWithPermit(sources)
+                    : CancellationToken.callWith(null, () -> compileWithPermit(sources));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(results.get(i));
+            }
+        } catch (Exception e) {
+            batch.forEach(p -> p.result.completeExceptionally(e));
+        }
+    }
+
+    private static class PendingSource {
+        final TestSource source;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        PendingSource(TestSource source) {
+            this.source = source;
+        }
+    }
+
+    /**
+     * Compile the test sources with as few javac tasks as possible, so the classpath is loaded once for all of them.
+     * Sources with the same class name go to separate tasks. When some sources fail, javac generates no class
+     * at all, so the sources without errors are compiled again without the failed ones.
+     * A source declaring a class that another source of its task declares too, e.g. the same helper class
+     * in the same package, is compiled again on its own, as the duplicate is not an error of the source.
+     * The errors of each failed source are set on its prompt info and exported to its output path.
+     * @return whether each source compiled, in the order of the sources
+     */
+    public List<Boolean> compileTests(List<TestSource> sources) {
+        try {
+            compilePermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("In TestCompiler.compileTests: " + e);
+        }
+        try {
+            return compileWithPermit(sources);
+        } finally {
+            compilePermits.release();
+        }
+    }
+
+    /**
+     * Compile the sources to one output folder, held until all of them are compiled.
+     * The caller holds a compile permit.
+     */
+    private List<Boolean> compileWithPermit(List<TestSource> sources) {
+        Map<TestSource, Boolean> results = new IdentityHashMap<>();
+        File outputFolder = borrowOutputFolder();
         try {
-            if (!outputPath.toAbsolutePath().getParent().toFile().exists()) {
+            for (List<TestSource> batch : splitByClassName(sources)) {
+                compileBatch(batch, results, outputFolder);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("In TestCompiler.compileTests: " + e);
+        } finally {
+            returnOutputFolder(outputFolder);
+        }
+        return sources.stream().map(results::get).collect(Collectors.toList());
+    }
+
+    private void compileBatch(List<TestSource> batch, Map<TestSource, Boolean> results, File outputFolder) throws IOException {
+        List<SourceFile> compilationUnits = new ArrayList<>();
+        for (TestSource source : batch) {
+            Path outputPath = source.getOutputPath();
+            if (outputPath != null && !outputPath.toAbsolutePath().getParent().toFile().exists()) {
                 outputPath.toAbsolutePath().getParent().toFile().mkdirs();
             }
-            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-            StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+            compilationUnits.add(new SourceFile(source));
+        }
+        if (!inMemory && !outputFolder.exists()) {
+            outputFolder.mkdirs();
+        }
+        Iterable<String> options = inMemory ? Collections.emptyList() : Arrays.asList("-d", outputFolder.toPath().toString());
 
-            SimpleJavaFileObject sourceJavaFileObject = new SimpleJavaFileObject(URI.create(className + ".java"),
-                    JavaFileObject.Kind.SOURCE){
-                public CharBuffer getCharContent(boolean b) {
-                    return CharBuffer.wrap(code);
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        boolean result;
+        StandardJavaFileManager fileManager = borrowFileManager();
+        try {
+            MemoryFileManager memoryFileManager = inMemory ? new MemoryFileManager(fileManager) : null;
+            JavaCompiler.CompilationTask task = COMPILER.getTask(null, inMemory ? memoryFileManager : fileManager,
+                    diagnostics, options, null, compilationUnits);
+            abortOnCancel(task, CancellationToken.current());
+            result = task.call();
+            if (result && inMemory) {
+                compiledClasses.putAll(memoryFileManager.getOutputs());
+            }
+        } finally {
+            fileManagers.push(fileManager);
+        }
+        if (result) {
+            batch.forEach(source -> {
+                results.put(source, true);
+                compiledFolders.put(source.getFullClassName(), outputFolder);
+            });
+            return;
+        }
+
+        Map<TestSource, List<String>> errors = new IdentityHashMap<>();
+        Set<TestSource> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<TestSource> duplicates = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean unattributed = false;
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (!(diagnostic.getSource() instanceof SourceFile)) {
+                unattributed |= diagnostic.getKind() == Diagnostic.Kind.ERROR;
+                continue;
+            }
+            TestSource source = ((SourceFile) diagnostic.getSource()).source;
+            errors.computeIfAbsent(source, k -> new ArrayList<>()).add("Error in " + source.getClassName() +
+                    ": line " + diagnostic.getLineNumber() + " : "
+                    + diagnostic.getMessage(null));
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                failed.add(source);
+                if (DUPLICATE_CLASS.equals(diagnostic.getCode()) && batch.size() > 1) {
+                    duplicates.add(source);
+                }
+            }
+        }
+        failed.removeAll(duplicates);
+        List<TestSource> passed = batch.stream()
+                .filter(source -> !failed.contains(source) && !duplicates.contains(source))
+                .collect(Collectors.toList());
+        if (unattributed || (failed.isEmpty() && duplicates.isEmpty())) {
+            failed.addAll(passed);
+            failed.addAll(duplicates);
+            passed.clear();
+            duplicates.clear();
+        }
+        for (TestSource source : failed) {
+            results.put(source, false);
+            reportError(source, errors.getOrDefault(source, new ArrayList<>()));
+        }
+        if (!passed.isEmpty()) {
+            compileBatch(passed, results, outputFolder);
+        }
+        for (TestSource source : batch) {
+            if (duplicates.contains(source)) {
+                compileBatch(Collections.singletonList(source), results, outputFolder);
+            }
+        }
+    }
+
+    /**
+     * Stop javac at its next step once the attempt compiling the sources is cancelled.
+     */
+    private static void abortOnCancel(JavaCompiler.CompilationTask task, CancellationToken token) {
+        if (token == null || !(task instanceof JavacTask)) {
+            return;
+        }
+        ((JavacTask) task).addTaskListener(new TaskListener() {
+            @Override
+            public void started(TaskEvent e) {
+                if (token.isCancelled()) {
+                    throw new CancellationException("Compilation cancelled");
                 }
-            };
+            }
+        });
+    }
 
-            Iterable<? extends JavaFileObject> compilationUnits = Arrays.asList(sourceJavaFileObject);
-            Iterable<String> options = Arrays.asList("-classpath", String.join(this.OS.contains("win") ? ";" : ":", this.classpathElements),
-                    "-d", buildFolder.toPath().toString());
+    private void reportError(TestSource source, List<String> errors) {
+        if (source.getPromptInfo() == null) {
+            return;
+        }
+        TestMessage testMessage = new TestMessage();
+        testMessage.setErrorType(TestMessage.ErrorType.COMPILE_ERROR);
+        testMessage.setErrorMessage(errors);
+        source.getPromptInfo().setErrorMsg(testMessage);
 
-            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
-            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null, compilationUnits);
+        exportError(source.getCode(), errors, source.getOutputPath());
+    }
 
-            result = task.call();
-            if (!result && promptInfo != null) {
-                TestMessage testMessage = new TestMessage();
-                List<String> errors = new ArrayList<>();
-                diagnostics.getDiagnostics().forEach(diagnostic -> {
-                    errors.add("Error in " + testName +
-                            ": line " + diagnostic.getLineNumber() + " : "
-                            + diagnostic.getMessage(null));
-                });
-                testMessage.setErrorType(TestMessage.ErrorType.COMPILE_ERROR);
-                testMessage.setErrorMessage(errors);
-                promptInfo.setErrorMsg(testMessage);
-
-                exportError(errors, outputPath);
+    /**
+     * Split the sources into batches without duplicate class names, keeping their order.
+     */
+    private static List<List<TestSource>> splitByClassName(List<TestSource> sources) {
+        List<List<TestSource>> batches = new ArrayList<>();
+        List<Set<String>> names = new ArrayList<>();
+        for (TestSource source : sources) {
+            int i = 0;
+            while (i < batches.size() && names.get(i).contains(source.getClassName())) {
+                i++;
             }
-        } catch (Exception e) {
-            throw new RuntimeException("In TestCompiler.compileTest: " + e);
+            if (i == batches.size()) {
+                batches.add(new ArrayList<>());
+                names.add(new HashSet<>());
+            }
+            batches.get(i).add(source);
+            names.get(i).add(source.getClassName());
+        }
+        return batches;
+    }
+
+    private static class SourceFile extends SimpleJavaFileObject {
+        final TestSource source;
+
+        SourceFile(TestSource source) {
+            super(URI.create(source.getClassName() + ".java"), JavaFileObject.Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharBuffer getCharContent(boolean b) {
+            return CharBuffer.wrap(source.getCode());
+        }
+    }
+
+    /**
+     * Take an idle output folder, or a new one while fewer folders than compile permits exist.
+     */
+    private File borrowOutputFolder() {
+        if (!namespaced) {
+            return buildFolder;
+        }
+        File folder = idleWorkerFolders.poll();
+        return folder != null ? folder : new File(buildFolder, "worker-" + workerCount.getAndIncrement());
+    }
+
+    private void returnOutputFolder(File folder) {
+        if (namespaced) {
+            idleWorkerFolders.push(folder);
+        }
+    }
+
+    /**
+     * Folder the test was last compiled to, by this thread or by the thread that compiled its batch.
+     */
+    private File getTestFolder(String fullTestName) {
+        return compiledFolders.getOrDefault(fullTestName, buildFolder);
+    }
+
+    /**
+     * Folders the test classes are loaded from, the one the test was last compiled to,
+     * or all output folders if the test was not compiled by this compiler.
+     */
+    private URL[] getOutputUrls(String fullTestName) throws IOException {
+        List<URL> urls = new ArrayList<>();
+        File testFolder = compiledFolders.get(fullTestName);
+        if (testFolder != null) {
+            urls.add(testFolder.toURI().toURL());
+            return urls.toArray(new URL[0]);
+        }
+        urls.add(buildFolder.toURI().toURL());
+        if (namespaced) {
+            for (File folder : getWorkerFolders()) {
+                urls.add(folder.toURI().toURL());
+            }
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    private List<File> getWorkerFolders() {
+        File[] folders = buildFolder.listFiles(file -> file.isDirectory() && file.getName().startsWith("worker-"));
+        return folders == null ? new ArrayList<>() : Arrays.asList(folders);
+    }
+
+    /**
+     * Take an idle file manager or create one, the dependency classpath is set when it is created
+     * so javac indexes the jars once per file manager instead of once per compilation.
+     */
+    private StandardJavaFileManager borrowFileManager() throws IOException {
+        StandardJavaFileManager fileManager = fileManagers.poll();
+        if (fileManager == null) {
+            fileManager = COMPILER.getStandardFileManager(null, null, null);
+            fileManager.setLocation(StandardLocation.CLASS_PATH, getClasspathFiles());
+        }
+        return fileManager;
+    }
+
+    private synchronized List<File> getClasspathFiles() {
+        if (classpathFiles == null) {
+            classpathFiles = this.classpathElements.stream().map(File::new).collect(Collectors.toList());
+        }
+        return classpathFiles;
+    }
+
+    /**
+     * Loader of the classpath elements shared by all test runs, so the jars are opened
+     * and their classes defined once.
+     */
+    private synchronized URLClassLoader getDependencyLoader() throws IOException {
+        if (sharedLoader == null) {
+            List<URL> urls = new ArrayList<>();
+            for (File file : getClasspathFiles()) {
+                urls.add(file.toURI().toURL());
+            }
+            sharedLoader = new URLClassLoader(urls.toArray(new URL[0]), getClass().getClassLoader());
+        }
+        return sharedLoader;
+    }
+
+    public synchronized void setClasspathElements(List<String> classpathElements) {
+        close();
+        this.classpathElements = classpathElements;
+    }
+
+    /**
+     * Release the pooled file managers and the dependency class loader, they are created again when needed.
+     */
+    public synchronized void close() {
+        this.classpathFiles = null;
+        StandardJavaFileManager fileManager;
+        while ((fileManager = fileManagers.poll()) != null) {
+            try {
+                fileManager.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (sharedLoader != null) {
+            try {
+                sharedLoader.close();
+            } catch (IOException ignored) {
+            }
+            sharedLoader = null;
         }
-        return result;
     }
 
     public void exportError(List<String> errors, Path outputPath) {
+        exportError(code, errors, outputPath);
+    }
+
+    public void exportError(String code, List<String> errors, Path outputPath) {
         try {
             BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath.toFile()));
             writer.write(code);
@@ -221,20 +606,74 @@ public class TestCompiler {
 
     /**
      * Copy compiled generated tests to target/test-classes and move the original folder to a backup folder
+     * In namespaced mode only the last successful compile of each test class is copied, from the folder it was compiled to.
      */
     public void copyAndBackupCompiledTest() {
         File target = this.targetTestsFolder;
+        // the tests compiled in memory and never executed, e.g. with noExecution
+        writeCompiledClasses(new HashMap<>(compiledClasses));
         try {
             if (!buildBackupFolder.exists() && target.exists()) {
                 FileUtils.copyDirectoryStructure(target, buildBackupFolder);
                 FileUtils.deleteDirectory(target);
             }
-            FileUtils.copyDirectoryStructure(buildFolder, target);
+            if (namespaced) {
+                for (Map.Entry<String, File> entry : compiledFolders.entrySet()) {
+                    copyCompiledTest(entry.getKey(), entry.getValue(), target);
+                }
+            } else {
+                FileUtils.copyDirectoryStructure(buildFolder, target);
+            }
         } catch (IOException e) {
             throw new RuntimeException("In TestCompiler.copyAndBackupCompiledTest: " + e);
         }
     }
 
+    /**
+     * Write classes compiled in memory to the folder their test class was compiled to, and drop them from memory
+     * unless the test was compiled again meanwhile.
+     */
+    private void writeCompiledClasses(Map<String, byte[]> classes) {
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            String name = entry.getKey();
+            String outerName = name.contains("$") ? name.substring(0, name.indexOf('$')) : name;
+            File folder = compiledFolders.getOrDefault(outerName, buildFolder);
+            Path classFile = folder.toPath().resolve(name.replace('.', File.separatorChar) + ".class");
+            try {
+                Files.createDirectories(classFile.getParent());
+                Files.write(classFile, entry.getValue());
+            } catch (IOException e) {
+                throw new RuntimeException("In TestCompiler.writeCompiledClasses: " + e);
+            }
+            compiledClasses.remove(name, entry.getValue());
+        }
+    }
+
+    /**
+     * Copy the class files of the test class and its nested classes, keeping their package folders.
+     */
+    private static void copyCompiledTest(String fullClassName, File folder, File target) throws IOException {
+        int dot = fullClassName.lastIndexOf('.');
+        String className = fullClassName.substring(dot + 1);
+        Path packageFolder = dot < 0 ? folder.toPath()
+                : folder.toPath().resolve(fullClassName.substring(0, dot).replace('.', File.separatorChar));
+        if (!Files.isDirectory(packageFolder)) {
+            return;
+        }
+        List<Path> classFiles;
+        try (Stream<Path> paths = Files.list(packageFolder)) {
+            classFiles = paths.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.equals(className + ".class") || (name.startsWith(className + "$") && name.endsWith(".class"));
+            }).collect(Collectors.toList());
+        }
+        for (Path classFile : classFiles) {
+            Path copy = target.toPath().resolve(folder.toPath().relativize(classFile));
+            Files.createDirectories(copy.getParent());
+            Files.copy(classFile, copy, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     /**
      * Restore the backup folder to src/test/java
      */
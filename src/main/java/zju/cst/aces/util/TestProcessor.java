@@ -26,6 +26,9 @@ public class TestProcessor {
     }
 
     public List<Integer> getErrorLineNum(TestExecutionSummary summary) {
+        if (summary instanceof FailureLineSummary && ((FailureLineSummary) summary).getFullTestName().equals(fullTestName)) {
+            return ((FailureLineSummary) summary).getErrorLines();
+        }
         List<Integer> errorLineNum = new ArrayList<>();
         summary.getFailures().forEach(failure -> {
             for (StackTraceElement st : failure.getException().getStackTrace()) {
@@ -0,0 +1,189 @@
+package zju.cst.aces.util;
+
+import org.junit.platform.launcher.Launcher;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+
+/**
+ * Main class of the forked test execution JVMs, see {@link ForkedTestExecutor}.
+ *
+ * <P>
+ * Requests are read from stdin and responses written to stdout as serialized objects, the output of the
+ * tests goes to stderr. The dependencies are loaded once by a shared class loader, the test classes by a
+ * class loader per request. A test class running longer than the timeout is reported with the stack trace
+ * of the test thread, then the worker exits because the thread cannot be stopped.
+ * </P>
+ * Arguments: the file listing the classpath elements of the project, one per line, and the timeout in milliseconds.
+ */
+public class TestWorker {
+
+    public static void main(String[] args) throws Exception {
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        out.flush();
+        System.setOut(System.err);
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(System.in));
+
+        List<URL> urls = new ArrayList<>();
+        for (String classpath : Files.readAllLines(Paths.get(args[0]))) {
+            if (!classpath.isBlank()) {
+                urls.add(new File(classpath).toURI().toURL());
+            }
+        }
+        long timeoutMillis = Long.parseLong(args[1]);
+        URLClassLoader dependencyLoader = new URLClassLoader(urls.toArray(new URL[0]), TestWorker.class.getClassLoader());
+        Launcher launcher = LauncherFactory.create();
+
+        while (true) {
+            Request request;
+            try {
+                request = (Request) in.readObject();
+            } catch (EOFException e) {
+                break;
+            }
+            Response response = execute(launcher, dependencyLoader, request, timeoutMillis);
+            out.writeObject(response);
+            out.flush();
+            out.reset();
+            if (response.isRecycle()) {
+                Runtime.getRuntime().halt(1);
+            }
+        }
+        System.exit(0);
+    }
+
+    static Response execute(Launcher launcher, ClassLoader dependencyLoader, Request request, long timeoutMillis) {
+        URLClassLoader classLoader = null;
+        boolean finished = true;
+        try {
+            URL[] urls = request.getBuildFolder() == null ? new URL[0] : new URL[]{new File(request.getBuildFolder()).toURI().toURL()};
+            classLoader = new MemoryClassLoader(urls, dependencyLoader, request.getClasses());
+            LauncherDiscoveryRequest discoveryRequest = LauncherDiscoveryRequestBuilder.request()
+                    .selectors(selectClass(classLoader.loadClass(request.getFullTestName())))
+                    .build();
+
+            RunningTestListener listener = new RunningTestListener();
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            Thread runner = new Thread(() -> {
+                try {
+                    launcher.execute(discoveryRequest, listener);
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            }, "chatunitest-test");
+            runner.setDaemon(true);
+            runner.start();
+            runner.join(timeoutMillis);
+            if (runner.isAlive()) {
+                finished = false;
+                TimeoutException timeout = new TimeoutException("Test execution timed out after " + timeoutMillis + " ms");
+                timeout.setStackTrace(runner.getStackTrace());
+                ForkedExecutionSummary summary = ForkedExecutionSummary.of(listener.getSummary());
+                TestIdentifier current = listener.running;
+                summary.addFailure(current != null ? current : ForkedExecutionSummary.identifier(request.getFullTestName()), timeout);
+                return new Response(summary, null, true);
+            }
+            if (error.get() != null) {
+                return new Response(null, error.get().toString(), false);
+            }
+            return new Response(ForkedExecutionSummary.of(listener.getSummary()), null, false);
+        } catch (Throwable t) {
+            return new Response(null, t.toString(), false);
+        } finally {
+            if (classLoader != null && finished) {
+                try {
+                    classLoader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Summary listener that remembers the test being executed.
+     */
+    private static class RunningTestListener extends SummaryGeneratingListener {
+        volatile TestIdentifier running;
+
+        @Override
+        public void executionStarted(TestIdentifier testIdentifier) {
+            super.executionStarted(testIdentifier);
+            if (testIdentifier.isTest()) {
+                running = testIdentifier;
+            }
+        }
+    }
+
+    public static class Request implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String fullTestName;
+        private final Map<String, byte[]> classes;
+        private final String buildFolder;
+
+        /**
+         * @param classes bytecode of the test classes compiled in memory, keyed by binary class name
+         * @param buildFolder folder of the test classes compiled to disk, may be null
+         */
+        public Request(String fullTestName, Map<String, byte[]> classes, String buildFolder) {
+            this.fullTestName = fullTestName;
+            this.classes = classes;
+            this.buildFolder = buildFolder;
+        }
+
+        public String getFullTestName() {
+            return fullTestName;
+        }
+
+        public Map<String, byte[]> getClasses() {
+            return classes;
+        }
+
+        public String getBuildFolder() {
+            return buildFolder;
+        }
+    }
+
+    public static class Response implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final ForkedExecutionSummary summary;
+        private final String error;
+        private final boolean recycle;
+
+        /**
+         * @param error why the test could not be executed, e.g. the class is not found, null otherwise
+         * @param recycle whether the worker exits after this response
+         */
+        public Response(ForkedExecutionSummary summary, String error, boolean recycle) {
+            this.summary = summary;
+            this.error = error;
+            this.recycle = recycle;
+        }
+
+        public ForkedExecutionSummary getSummary() {
+            return summary;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isRecycle() {
+            return recycle;
+        }
+    }
+}
@@ -3,7 +3,11 @@ package zju.cst.aces.util;
 import com.knuddels.jtokkit.Encodings;
 import com.knuddels.jtokkit.api.Encoding;
 import com.knuddels.jtokkit.api.EncodingRegistry;
-import com.knuddels.jtokkit.api.ModelType;
+import com.knuddels.jtokkit.api.EncodingType;
+import zju.cst.aces.api.config.Model;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @Author volunze
@@ -14,14 +18,107 @@ import com.knuddels.jtokkit.api.ModelType;
  */
 public class TokenCounter {
 
+    private static final EncodingRegistry REGISTRY = Encodings.newDefaultEncodingRegistry();
+    private static final int CACHE_SIZE = 2048;
+    private static final int MIN_CACHED_LENGTH = 32;
+    /** Longer texts are mostly whole prompts, which are not repeated, the cache holds at most 2048 * 4K chars. */
+    private static final int MAX_CACHED_LENGTH = 1 << 12;
+    /** Counter of the cl100k_base encoding of gpt-3.5-turbo, also used for models jtokkit does not know, e.g. code-llama. */
+    private static final TokenCounter DEFAULT = new TokenCounter();
+    private static final Map<Model, TokenCounter> COUNTERS = new ConcurrentHashMap<>();
+
+    private final Encoding encoding;
+    private final Map<String, Integer> cache;
+
     public TokenCounter() {
+        this(REGISTRY.getEncoding(EncodingType.CL100K_BASE));
+    }
+
+    private TokenCounter(Encoding encoding) {
+        this.encoding = encoding;
+        this.cache = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Get the shared counter of the model, the encoding and the memoized counts are reused between calls.
+     */
+    public static TokenCounter of(Model model) {
+        if (model == null) {
+            return DEFAULT;
+        }
+        return COUNTERS.computeIfAbsent(model, m -> REGISTRY.getEncodingForModel(m.getModelName())
+                .map(TokenCounter::new)
+                .orElse(DEFAULT));
     }
 
+    /**
+     * Count the tokens of a whole text such as a prompt or an error message, the count is not memoized.
+     */
     public static int countToken(String error_message){
-        EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
-        // Get encoding for a specific model via string name
-        Encoding encoding = registry.getEncodingForModel(ModelType.GPT_3_5_TURBO);
-        int tokenCount = encoding.countTokens(error_message);
-        return tokenCount;
+        return DEFAULT.countUncached(error_message);
+    }
+
+    public static int countToken(Model model, String text) {
+        return of(model).countUncached(text);
+    }
+
+    /**
+     * Count the tokens of a text that is not repeated, e.g. a rendered prompt, without evicting memoized fragments.
+     */
+    public int countUncached(String text) {
+        return text == null || text.isEmpty() ? 0 : encoding.countTokens(text);
+    }
+
+    /**
+     * Count the tokens of the text, counts of repeated fragments such as class signatures and
+     * dependency bodies are memoized.
+     */
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        if (text.length() < MIN_CACHED_LENGTH || text.length() > MAX_CACHED_LENGTH) {
+            return encoding.countTokens(text);
+        }
+        synchronized (cache) {
+            Integer cached = cache.get(text);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        int count = encoding.countTokens(text);
+        synchronized (cache) {
+            cache.put(text, count);
+        }
+        return count;
+    }
+
+    /**
+     * Count the tokens of a data model value: a string, or the elements of a list or the values of a map.
+     */
+    public int countValue(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Collection) {
+            int count = 0;
+            for (Object element : (Collection<?>) value) {
+                count += countValue(element);
+            }
+            return count;
+        }
+        if (value instanceof Map) {
+            int count = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                count += countValue(entry.getKey()) + countValue(entry.getValue());
+            }
+            return count;
+        }
+        return count(value.toString());
     }
 }
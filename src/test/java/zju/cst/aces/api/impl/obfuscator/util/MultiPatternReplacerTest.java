@@ -0,0 +1,117 @@
+package zju.cst.aces.api.impl.obfuscator.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiPatternReplacerTest {
+
+    private static final String SOURCE = "public class OrderService {\n"
+            + "    private OrderRepository orderRepository;\n"
+            + "    Order getOrder(long id) { return orderRepository.find(id); }\n"
+            + "    // OrderService finds an Order, see OrderRepository#find\n"
+            + "}\n";
+
+    @Test
+    void overlappingMatchesGoToThePatternAddedFirst() {
+        assertEquals("Xd", replacer("abc", "X", "bcd", "Y").replace("abcd"));
+        assertEquals("aY", replacer("bcd", "Y", "abc", "X").replace("abcd"));
+        assertEquals("X-Xd", replacer("abc", "X", "bcd", "Y").replace("abc-abcd"));
+    }
+
+    @Test
+    void patternThatIsAPrefixOfAnotherFollowsThePriority() {
+        assertEquals("B F", replacer("foobar", "B", "foo", "F").replace("foobar foo"));
+        assertEquals("Fbar F", replacer("foo", "F", "foobar", "B").replace("foobar foo"));
+    }
+
+    @Test
+    void longerNamesAddedFirstWinOverTheirParts() {
+        MultiPatternReplacer replacer = replacer("getValue", "m0", "Value", "C0", "get", "m1");
+        assertEquals("m0 m1 C0 m0x", replacer.replace("getValue get Value getValuex"));
+        assertEquals("m0(m1)", replacer.replace("getValue(get)"));
+    }
+
+    @Test
+    void replacementIsNotMatchedAgain() {
+        assertEquals("b c", replacer("a", "b", "b", "c").replace("a b"));
+    }
+
+    @Test
+    void duplicatePatternKeepsItsFirstReplacement() {
+        MultiPatternReplacer replacer = replacer("name", "n1", "name", "n2");
+        assertEquals(1, replacer.size());
+        assertEquals("n1", replacer.replace("name"));
+    }
+
+    @Test
+    void textWithoutMatchIsReturnedAsIs() {
+        String text = "nothing to replace";
+        assertSame(text, replacer("absent", "x").replace(text));
+        assertNull(replacer("absent", "x").replace(null));
+    }
+
+    @Test
+    void addAfterBuildFails() {
+        MultiPatternReplacer replacer = replacer("a", "b");
+        assertThrows(IllegalStateException.class, () -> replacer.add("c", "d"));
+        assertThrows(IllegalStateException.class, () -> new MultiPatternReplacer().replace("a"));
+    }
+
+    @Test
+    void obfuscateMatchesSequentialReplaceAndRoundTrips() {
+        // the crypto map lists the longer names first
+        Map<String, String> cryptoMap = new LinkedHashMap<>();
+        cryptoMap.put("OrderRepository", "Cls2");
+        cryptoMap.put("OrderService", "Cls1");
+        cryptoMap.put("Order", "Cls0");
+        cryptoMap.put("find", "fun0");
+
+        MultiPatternReplacer obfuscate = new MultiPatternReplacer();
+        MultiPatternReplacer deobfuscate = new MultiPatternReplacer();
+        for (Map.Entry<String, String> entry : cryptoMap.entrySet()) {
+            obfuscate.add(capitalize(entry.getKey()), capitalize(entry.getValue()));
+            obfuscate.add(decapitalize(entry.getKey()), decapitalize(entry.getValue()));
+            deobfuscate.add(capitalize(entry.getValue()), capitalize(entry.getKey()));
+            deobfuscate.add(decapitalize(entry.getValue()), decapitalize(entry.getKey()));
+        }
+        obfuscate.build();
+        deobfuscate.build();
+
+        String obfuscated = obfuscate.replace(SOURCE);
+        assertEquals(sequentialReplace(SOURCE, cryptoMap), obfuscated);
+        assertFalse(obfuscated.contains("Order"));
+        assertFalse(obfuscated.contains("find"));
+        assertEquals(SOURCE, deobfuscate.replace(obfuscated));
+    }
+
+    /**
+     * The replacement of the obfuscator before the automaton, one pattern after another.
+     */
+    private static String sequentialReplace(String text, Map<String, String> cryptoMap) {
+        for (Map.Entry<String, String> entry : cryptoMap.entrySet()) {
+            text = text.replace(capitalize(entry.getKey()), capitalize(entry.getValue()));
+            text = text.replace(decapitalize(entry.getKey()), decapitalize(entry.getValue()));
+        }
+        return text;
+    }
+
+    private static MultiPatternReplacer replacer(String... patterns) {
+        MultiPatternReplacer replacer = new MultiPatternReplacer();
+        for (int i = 0; i < patterns.length; i += 2) {
+            replacer.add(patterns[i], patterns[i + 1]);
+        }
+        return replacer.build();
+    }
+
+    private static String capitalize(String s) {
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
+    private static String decapitalize(String s) {
+        return Character.toLowerCase(s.charAt(0)) + s.substring(1);
+    }
+}
@@ -0,0 +1,275 @@
+package zju.cst.aces.parser;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import zju.cst.aces.api.Logger;
+import zju.cst.aces.api.Project;
+import zju.cst.aces.dto.OCM;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedInfoStoreTest {
+
+    private static final String SOURCE = "package com.example;\n"
+            + "public class Calculator {\n"
+            + "    private int base;\n"
+            + "    public Calculator(int base) { this.base = base; }\n"
+            + "    public int add(int a) { return base + a; }\n"
+            + "    public int add(int a, int b) { return base + a + b; }\n"
+            + "    static class Helper {\n"
+            + "        String name() { return \"helper\"; }\n"
+            + "    }\n"
+            + "}\n";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    @Test
+    void exportJsonMatchesJsonLayout(@TempDir Path dir) throws IOException {
+        Path srcRoot = dir.resolve("src");
+        Path source = srcRoot.resolve("com/example/Calculator.java");
+        Files.createDirectories(source.getParent());
+        Files.writeString(source, SOURCE);
+        Project project = new SourceProject(srcRoot);
+
+        Path jsonOutput = dir.resolve("json");
+        extract(project, jsonOutput, null);
+
+        Path packedOutput = dir.resolve("packed");
+        try (PackedInfoStore store = PackedInfoStore.openWriter(packedOutput)) {
+            extract(project, packedOutput, store);
+            store.commit();
+        }
+        Path exported = dir.resolve("exported");
+        try (PackedInfoStore store = PackedInfoStore.openReader(packedOutput)) {
+            store.exportJson(exported, GSON);
+        }
+
+        Map<String, String> expected = readTree(jsonOutput);
+        // one class.json and one json file per constructor and method
+        assertEquals(6, expected.size());
+        assertTrue(expected.containsKey("com/example/Calculator/class.json"));
+        assertTrue(expected.containsKey("com/example/Helper/class.json"));
+        assertEquals(expected, readTree(exported));
+    }
+
+    @Test
+    void committedRecordsAreReadAfterReopen(@TempDir Path dir) throws IOException {
+        try (PackedInfoStore store = PackedInfoStore.openWriter(dir)) {
+            store.put("a", "first");
+            store.put("b", "second");
+            store.commit();
+        }
+        try (PackedInfoStore store = PackedInfoStore.openWriter(dir)) {
+            store.put("a", "replaced");
+            store.commit();
+        }
+        try (PackedInfoStore store = PackedInfoStore.openReader(dir)) {
+            assertEquals("replaced", store.get("a", String.class));
+            assertEquals("second", store.get("b", String.class));
+            assertNull(store.get("c", String.class));
+        }
+    }
+
+    @Test
+    void closeWithoutCommitDropsAppendedRecords(@TempDir Path dir) throws IOException {
+        try (PackedInfoStore store = PackedInfoStore.openWriter(dir)) {
+            store.put("a", "first");
+        }
+        assertFalse(PackedInfoStore.exists(dir));
+        assertFalse(Files.exists(dir.resolve(PackedInfoStore.DATA_FILE)));
+
+        try (PackedInfoStore store = PackedInfoStore.openWriter(dir)) {
+            store.put("a", "first");
+            store.commit();
+        }
+        long committedSize = Files.size(dir.resolve(PackedInfoStore.DATA_FILE));
+        try (PackedInfoStore store = PackedInfoStore.openWriter(dir)) {
+            store.put("a", "uncommitted");
+            store.put("b", "uncommitted");
+        }
+        assertEquals(committedSize, Files.size(dir.resolve(PackedInfoStore.DATA_FILE)));
+        try (PackedInfoStore store = PackedInfoStore.openReader(dir)) {
+            assertEquals("first", store.get("a", String.class));
+            assertNull(store.get("b", String.class));
+        }
+    }
+
+    @Test
+    void commitCompactsWhenMostBytesAreDead(@TempDir Path dir) throws IOException {
+        Path data = dir.resolve(PackedInfoStore.DATA_FILE);
+        try (PackedInfoStore store = PackedInfoStore.openWriter(dir)) {
+            for (int i = 0; i < 10; i++) {
+                store.put("k" + i, "v" + i);
+            }
+            store.commit();
+        }
+        long liveSize = Files.size(data);
+
+        // replacing every record once doubles the file, which is still under the limit
+        try (PackedInfoStore store = PackedInfoStore.openWriter(dir)) {
+            for (int i = 0; i < 10; i++) {
+                store.put("k" + i, "w" + i);
+            }
+            store.commit();
+            assertEquals(liveSize, store.getDeadBytes());
+        }
+        assertEquals(2 * liveSize, Files.size(data));
+
+        try (PackedInfoStore store = PackedInfoStore.openWriter(dir)) {
+            for (int i = 0; i < 10; i++) {
+                store.put("k" + i, "x" + i);
+            }
+            store.remove("k0");
+            store.commit();
+            assertEquals(0, store.getDeadBytes());
+        }
+        assertTrue(Files.size(data) < liveSize);
+        assertFalse(Files.exists(dir.resolve(PackedInfoStore.DATA_FILE + ".tmp")));
+        try (PackedInfoStore store = PackedInfoStore.openReader(dir)) {
+            assertNull(store.get("k0", String.class));
+            for (int i = 1; i < 10; i++) {
+                assertEquals("x" + i, store.get("k" + i, String.class));
+            }
+        }
+    }
+
+    @Test
+    void createDropsExistingRecords(@TempDir Path dir) throws IOException {
+        try (PackedInfoStore store = PackedInfoStore.openWriter(dir)) {
+            store.put("a", "first");
+            store.commit();
+        }
+        try (PackedInfoStore store = PackedInfoStore.create(dir)) {
+            store.put("b", "second");
+            store.commit();
+        }
+        try (PackedInfoStore store = PackedInfoStore.openReader(dir)) {
+            assertNull(store.get("a", String.class));
+            assertEquals("second", store.get("b", String.class));
+        }
+    }
+
+    @Test
+    void readFromWriterFails(@TempDir Path dir) throws IOException {
+        try (PackedInfoStore store = PackedInfoStore.openWriter(dir)) {
+            store.put("a", "first");
+            store.commit();
+            assertThrows(IllegalStateException.class, () -> store.get("a", String.class));
+        }
+    }
+
+    private static void extract(Project project, Path outputPath, PackedInfoStore store) {
+        JavaParser parser = new JavaParser(new ParserConfiguration()
+                .setSymbolResolver(new JavaSymbolSolver(new ReflectionTypeSolver())));
+        CompilationUnit cu = parser.parse(SOURCE).getResult().orElseThrow();
+        ClassParser classParser = new ClassParser(parser, project, outputPath.resolve("com").resolve("example"),
+                new FailingLogger(), GSON, new AtomicInteger(), new HashMap<>(), new OCM());
+        classParser.setPackedInfoStore(store);
+        assertEquals(2, classParser.extractClass(cu));
+    }
+
+    private static Map<String, String> readTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .collect(Collectors.toMap(p -> root.relativize(p).toString().replace('\\', '/'), p -> {
+                        try {
+                            return Files.readString(p);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }, (a, b) -> a, TreeMap::new));
+        }
+    }
+
+    private static class SourceProject implements Project {
+        private final Path srcRoot;
+
+        SourceProject(Path srcRoot) {
+            this.srcRoot = srcRoot;
+        }
+
+        @Override
+        public Project getParent() {
+            return null;
+        }
+
+        @Override
+        public File getBasedir() {
+            return srcRoot.getParent().toFile();
+        }
+
+        @Override
+        public String getPackaging() {
+            return "jar";
+        }
+
+        @Override
+        public String getGroupId() {
+            return "com.example";
+        }
+
+        @Override
+        public String getArtifactId() {
+            return "example";
+        }
+
+        @Override
+        public List<String> getCompileSourceRoots() {
+            return Collections.singletonList(srcRoot.toString());
+        }
+
+        @Override
+        public Path getArtifactPath() {
+            return null;
+        }
+
+        @Override
+        public Path getBuildPath() {
+            return null;
+        }
+
+        @Override
+        public List<String> getClassPaths() {
+            return Collections.emptyList();
+        }
+    }
+
+    private static class FailingLogger implements Logger {
+        @Override
+        public void info(String msg) {
+        }
+
+        @Override
+        public void warn(String msg) {
+        }
+
+        @Override
+        public void error(String msg) {
+            fail(msg);
+        }
+
+        @Override
+        public void debug(String msg) {
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package zju.cst.aces.parser;
+
+import com.github.javaparser.StaticJavaParser;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseManifestTest {
+
+    private static final String SHAPE = "package com.example.shape;\n"
+            + "public abstract class Shape {\n"
+            + "    public abstract double area();\n"
+            + "}\n";
+
+    private static final String CIRCLE = "package com.example.shape;\n"
+            + "public class Circle extends Shape implements Comparable<Circle> {\n"
+            + "    private double r;\n"
+            + "    public double area() { return Math.PI * r * r; }\n"
+            + "    public int compareTo(Circle o) { return Double.compare(area(), o.area()); }\n"
+            + "}\n";
+
+    private static final String DRAWING = "package com.example;\n"
+            + "import com.example.shape.Circle;\n"
+            + "public class Drawing {\n"
+            + "    double total(Circle c) { return c.area(); }\n"
+            + "}\n";
+
+    private static final String UNRELATED = "package com.example;\n"
+            + "public class Unrelated {\n"
+            + "    int one() { return 1; }\n"
+            + "}\n";
+
+    @Test
+    void createEntryRecordsClassesSupertypesAndReferences() {
+        ParseManifest.Entry entry = ParseManifest.createEntry(StaticJavaParser.parse(CIRCLE), "hash");
+        assertEquals("hash", entry.hash);
+        assertEquals(Collections.singletonList("com.example.shape.Circle"), entry.classes);
+        assertEquals(Arrays.asList("Comparable", "Shape"), entry.supertypes);
+        assertTrue(entry.references.contains("Circle"));
+        assertTrue(entry.references.contains("Math"));
+    }
+
+    @Test
+    void dependentAndDeclaringFiles() {
+        ParseManifest manifest = manifest();
+
+        Set<String> dependents = manifest.getDependentFiles(Collections.singleton("com.example.shape.Circle"));
+        assertEquals(Set.of("Circle.java", "Drawing.java"), dependents);
+        assertEquals(Set.of("Circle.java"), manifest.getDependentFiles(Collections.singleton("com.example.shape.Shape")));
+        assertTrue(manifest.getDependentFiles(Collections.singleton("com.example.Unrelated")).isEmpty());
+
+        assertEquals(Set.of("Shape.java"), manifest.getDeclaringFiles(Collections.singleton("Shape")));
+        assertEquals(Set.of("com.example.Drawing", "com.example.Unrelated"),
+                manifest.getClasses(Arrays.asList("Drawing.java", "Unrelated.java", "Missing.java")));
+    }
+
+    @Test
+    void saveAndLoad(@TempDir Path dir) throws IOException {
+        Gson gson = new Gson();
+        Path path = dir.resolve("out").resolve(ParseManifest.FILE_NAME);
+        assertNull(ParseManifest.load(path, gson));
+
+        ParseManifest manifest = manifest();
+        manifest.packed = true;
+        manifest.save(path, gson);
+        ParseManifest loaded = ParseManifest.load(path, gson);
+        assertNotNull(loaded);
+        assertTrue(loaded.packed);
+        assertEquals(manifest.files.keySet(), loaded.files.keySet());
+        assertEquals(manifest.files.get("Circle.java").references, loaded.files.get("Circle.java").references);
+
+        Files.writeString(path, "{ not json");
+        assertNull(ParseManifest.load(path, gson));
+    }
+
+    @Test
+    void hashChangesWithContent(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("A.java");
+        Files.writeString(file, UNRELATED);
+        String hash = ParseManifest.hash(file);
+        assertEquals(64, hash.length());
+        assertEquals(hash, ParseManifest.hash(file));
+        Files.writeString(file, UNRELATED + "\n");
+        assertNotEquals(hash, ParseManifest.hash(file));
+    }
+
+    private static ParseManifest manifest() {
+        ParseManifest manifest = new ParseManifest();
+        manifest.files.put("Shape.java", ParseManifest.createEntry(StaticJavaParser.parse(SHAPE), "1"));
+        manifest.files.put("Circle.java", ParseManifest.createEntry(StaticJavaParser.parse(CIRCLE), "2"));
+        manifest.files.put("Drawing.java", ParseManifest.createEntry(StaticJavaParser.parse(DRAWING), "3"));
+        manifest.files.put("Unrelated.java", ParseManifest.createEntry(StaticJavaParser.parse(UNRELATED), "4"));
+        return manifest;
+    }
+}
@@ -0,0 +1,85 @@
+package zju.cst.aces.prompt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptPackerTest {
+
+    @Test
+    void emptyWithoutCapacityOrItems() {
+        List<PromptPacker.Item> items = Collections.singletonList(new PromptPacker.Item("full_fm", null, 10, 90));
+        assertTrue(PromptPacker.select(items, 0).isEmpty());
+        assertTrue(PromptPacker.select(items, -5).isEmpty());
+        assertTrue(PromptPacker.select(new ArrayList<>(), 100).isEmpty());
+    }
+
+    @Test
+    void keepsAllItemsThatFit() {
+        List<PromptPacker.Item> items = Arrays.asList(
+                new PromptPacker.Item("class_name", null, 5, 100),
+                new PromptPacker.Item("m_deps", "A", 300, 60),
+                new PromptPacker.Item("c_deps", "B", 200, 40));
+        assertEquals(new HashSet<>(items), new HashSet<>(PromptPacker.select(items, 505)));
+    }
+
+    @Test
+    void higherTierIsNeverDroppedForLowerOnes() {
+        PromptPacker.Item fullFm = new PromptPacker.Item("full_fm", null, 1500, 90);
+        PromptPacker.Item className = new PromptPacker.Item("class_name", null, 5, 100);
+        PromptPacker.Item methodSig = new PromptPacker.Item("method_sig", null, 10, 100);
+        PromptPacker.Item mDepA = new PromptPacker.Item("m_deps", "A", 600, 60);
+        PromptPacker.Item mDepB = new PromptPacker.Item("m_deps", "B", 600, 60);
+        PromptPacker.Item cDep = new PromptPacker.Item("c_deps", "X", 150, 40);
+        List<PromptPacker.Item> items = Arrays.asList(mDepA, mDepB, cDep, fullFm, className, methodSig);
+
+        // both m_deps entries would keep more tokens than full_fm, but full_fm has the higher priority
+        List<PromptPacker.Item> selected = PromptPacker.select(items, 1700);
+        assertEquals(new HashSet<>(Arrays.asList(className, methodSig, fullFm, cDep)), new HashSet<>(selected));
+    }
+
+    @Test
+    void tierKeepsMostTokens() {
+        List<PromptPacker.Item> items = Arrays.asList(
+                new PromptPacker.Item("m_deps", "A", 600, 60),
+                new PromptPacker.Item("m_deps", "B", 500, 60),
+                new PromptPacker.Item("m_deps", "C", 400, 60));
+        assertEquals(Set.of("B", "C"), entryKeys(PromptPacker.select(items, 900)));
+        assertEquals(Set.of("A"), entryKeys(PromptPacker.select(items, 899)));
+    }
+
+    @Test
+    void tierPrefersMoreItemsForTheSameTokens() {
+        List<PromptPacker.Item> items = Arrays.asList(
+                new PromptPacker.Item("c_deps", "A", 300, 40),
+                new PromptPacker.Item("c_deps", "B", 100, 40),
+                new PromptPacker.Item("c_deps", "C", 200, 40));
+        assertEquals(Set.of("B", "C"), entryKeys(PromptPacker.select(items, 300)));
+    }
+
+    @Test
+    void largeCapacityIsNeverExceeded() {
+        Random random = new Random(7);
+        for (int run = 0; run < 20; run++) {
+            List<PromptPacker.Item> items = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                items.add(new PromptPacker.Item("m_deps", String.valueOf(i), 1 + random.nextInt(20_000),
+                        20 + 20 * random.nextInt(4)));
+            }
+            int capacity = 50_000 + random.nextInt(100_000);
+            List<PromptPacker.Item> selected = PromptPacker.select(items, capacity);
+            int tokens = selected.stream().mapToInt(PromptPacker.Item::getTokens).sum();
+            assertTrue(tokens <= capacity, "tokens " + tokens + " capacity " + capacity);
+            // scaling the capacity only loses a small share of it
+            int total = items.stream().mapToInt(PromptPacker.Item::getTokens).sum();
+            assertTrue(tokens >= Math.min(total, capacity) * 0.8, "tokens " + tokens + " capacity " + capacity);
+        }
+    }
+
+    private static Set<String> entryKeys(List<PromptPacker.Item> items) {
+        return items.stream().map(PromptPacker.Item::getEntryKey).collect(Collectors.toSet());
+    }
+}
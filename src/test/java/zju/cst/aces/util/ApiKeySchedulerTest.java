@@ -0,0 +1,99 @@
+package zju.cst.aces.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApiKeySchedulerTest {
+
+    private static final long COOLDOWN = 60_000;
+
+    @Test
+    void routesToKeyWithMostHeadroom() {
+        ApiKeyScheduler scheduler = new ApiKeyScheduler(new String[]{"key-a", "key-b"}, 10, 1000, COOLDOWN);
+        assertEquals("key-a", scheduler.acquire(600).getKey());
+        assertEquals("key-b", scheduler.acquire(100).getKey());
+        // key-a has 400 tokens left and key-b 900
+        assertEquals("key-b", scheduler.acquire(300).getKey());
+        // key-b now has 600 tokens left, but 8 of 10 requests
+        assertEquals("key-b", scheduler.acquire(10).getKey());
+    }
+
+    @Test
+    void waitsWhenBucketsAreEmpty() {
+        ApiKeyScheduler scheduler = new ApiKeyScheduler(new String[]{"key-a"}, 1, 0, COOLDOWN);
+        assertEquals(0, scheduler.acquire(100).getWaitMillis());
+        long wait = scheduler.acquire(100).getWaitMillis();
+        assertTrue(wait > 59_000 && wait <= 60_000, "wait " + wait);
+    }
+
+    @Test
+    void peekDoesNotReserve() {
+        ApiKeyScheduler scheduler = new ApiKeyScheduler(new String[]{"key-a"}, 1, 0, COOLDOWN);
+        assertEquals("key-a", scheduler.peek());
+        assertEquals("key-a", scheduler.peek());
+        assertEquals(0, scheduler.acquire(100).getWaitMillis());
+    }
+
+    @Test
+    void usedTokensCorrectTheEstimate() {
+        ApiKeyScheduler scheduler = new ApiKeyScheduler(new String[]{"key-a"}, 0, 1000, COOLDOWN);
+        ApiKeyScheduler.Lease lease = scheduler.acquire(100);
+        scheduler.onSuccess(lease, 900);
+        long wait = scheduler.acquire(500).getWaitMillis();
+        // 100 tokens are left, 400 more take 24 seconds to refill
+        assertTrue(wait > 23_000 && wait <= 24_000, "wait " + wait);
+    }
+
+    @Test
+    void rejectedKeyCoolsDownWhileAnotherIsUsable() {
+        ApiKeyScheduler scheduler = new ApiKeyScheduler(new String[]{"key-a", "key-b"}, 0, 0, COOLDOWN);
+        ApiKeyScheduler.Lease lease = scheduler.acquire(10);
+        assertEquals("key-a", lease.getKey());
+        scheduler.onFailure(lease, 429, -1);
+        for (int i = 0; i < 3; i++) {
+            ApiKeyScheduler.Lease next = scheduler.acquire(10);
+            assertEquals("key-b", next.getKey());
+            assertEquals(0, next.getWaitMillis());
+        }
+        assertEquals("key-b", scheduler.peek());
+    }
+
+    @Test
+    void unauthorizedKeyCoolsDownLonger() {
+        ApiKeyScheduler scheduler = new ApiKeyScheduler(new String[]{"key-a", "key-b", "key-c"}, 0, 0, COOLDOWN);
+        scheduler.onFailure(scheduler.acquire(10), 401, -1);
+        scheduler.onFailure(scheduler.acquire(10), 429, -1);
+        // key-c is the last usable key, so it only waits for the Retry-After delay
+        ApiKeyScheduler.Lease last = scheduler.acquire(10);
+        assertEquals("key-c", last.getKey());
+        scheduler.onFailure(last, 429, 2 * COOLDOWN);
+        ApiKeyScheduler.Lease lease = scheduler.acquire(10);
+        assertEquals("key-b", lease.getKey());
+        long wait = lease.getWaitMillis();
+        assertTrue(wait > COOLDOWN - 1_000 && wait <= COOLDOWN, "wait " + wait);
+    }
+
+    @Test
+    void lastUsableKeyOnlyWaitsForRetryAfter() {
+        ApiKeyScheduler scheduler = new ApiKeyScheduler(new String[]{"key-a"}, 0, 0, COOLDOWN);
+        scheduler.onFailure(scheduler.acquire(10), 429, -1);
+        assertEquals(0, scheduler.acquire(10).getWaitMillis());
+
+        scheduler.onFailure(scheduler.acquire(10), 429, 5_000);
+        long wait = scheduler.acquire(10).getWaitMillis();
+        assertTrue(wait > 4_000 && wait <= 5_000, "wait " + wait);
+    }
+
+    @Test
+    void otherFailuresDoNotCoolDown() {
+        ApiKeyScheduler scheduler = new ApiKeyScheduler(new String[]{"key-a", "key-b"}, 0, 0, COOLDOWN);
+        ApiKeyScheduler.Lease lease = scheduler.acquire(10);
+        scheduler.onFailure(lease, 500, -1);
+        scheduler.onFailure(lease, -1, -1);
+        // unlimited keys are balanced by the number of requests
+        assertEquals("key-b", scheduler.acquire(10).getKey());
+        assertEquals("key-a", scheduler.acquire(10).getKey());
+        assertTrue(scheduler.report().contains("failures: 2"));
+    }
+}
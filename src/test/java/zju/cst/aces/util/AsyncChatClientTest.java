@@ -0,0 +1,241 @@
+package zju.cst.aces.util;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import zju.cst.aces.api.Logger;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.dto.ChatResponse;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncChatClientTest {
+
+    private static final String OK_BODY = "{\"id\":\"chat-1\",\"usage\":{\"total_tokens\":42},"
+            + "\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"ok\"}}]}";
+
+    private MockWebServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void retriesAfterRetryAfterOn429() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+        server.enqueue(new MockResponse().setBody(OK_BODY));
+        AsyncChatClient client = new AsyncChatClient(config(4));
+
+        long start = System.currentTimeMillis();
+        ChatResponse response = client.chat(url(), "{}", 10).get(10, TimeUnit.SECONDS);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals("ok", response.getContent());
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, client.getRetryCount());
+        assertTrue(elapsed >= 900, "elapsed " + elapsed);
+        assertEquals("Bearer key-a", server.takeRequest().getHeader("Authorization"));
+    }
+
+    @Test
+    void retriesServerErrorsThenSucceeds() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setBody(OK_BODY));
+        AsyncChatClient client = new AsyncChatClient(config(4));
+
+        ChatResponse response = client.chat(url(), "{}", 10).get(10, TimeUnit.SECONDS);
+
+        assertEquals("chat-1", response.getId());
+        assertEquals(3, server.getRequestCount());
+        assertEquals(2, client.getRetryCount());
+        assertEquals(1, client.getCompletedCount());
+        assertEquals(0, client.getFailedCount());
+    }
+
+    @Test
+    void failsOnClientErrorWithoutRetry() {
+        server.enqueue(new MockResponse().setResponseCode(400));
+        AsyncChatClient client = new AsyncChatClient(config(4));
+
+        CompletableFuture<ChatResponse> future = client.chat(url(), "{}", 10);
+
+        assertThrows(Exception.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, client.getFailedCount());
+    }
+
+    @Test
+    void limitsRequestsInFlight() throws Exception {
+        BlockingDispatcher dispatcher = new BlockingDispatcher();
+        server.setDispatcher(dispatcher);
+        AsyncChatClient client = new AsyncChatClient(config(2));
+
+        List<CompletableFuture<ChatResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(client.chat(url(), "{}", 10));
+        }
+        assertTrue(dispatcher.awaitReceived(2));
+        assertEquals(2, client.getInFlight());
+        assertEquals(3, client.getQueueDepth());
+        assertEquals(2, server.getRequestCount());
+
+        dispatcher.release();
+        for (CompletableFuture<ChatResponse> future : futures) {
+            assertEquals("ok", future.get(10, TimeUnit.SECONDS).getContent());
+        }
+        assertEquals(5, server.getRequestCount());
+        assertEquals(2, dispatcher.maxConcurrent.get());
+        assertEquals(3, client.getMaxQueueDepth());
+    }
+
+    @Test
+    void cancelWhileQueuedDropsRequest() throws Exception {
+        BlockingDispatcher dispatcher = new BlockingDispatcher();
+        server.setDispatcher(dispatcher);
+        AsyncChatClient client = new AsyncChatClient(config(1));
+
+        CompletableFuture<ChatResponse> first = client.chat(url(), "{}", 10);
+        CompletableFuture<ChatResponse> queued = client.chat(url(), "{}", 10);
+        assertTrue(dispatcher.awaitReceived(1));
+        assertEquals(1, client.getQueueDepth());
+
+        assertTrue(queued.cancel(true));
+        dispatcher.release();
+        assertEquals("ok", first.get(10, TimeUnit.SECONDS).getContent());
+        CompletableFuture<ChatResponse> next = client.chat(url(), "{}", 10);
+        assertEquals("ok", next.get(10, TimeUnit.SECONDS).getContent());
+
+        // the cancelled request was dropped from the queue instead of being sent
+        assertEquals(2, server.getRequestCount());
+        assertTrue(queued.isCancelled());
+        assertEquals(0, client.getQueueDepth());
+        assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    void parseRetryAfterSeconds() {
+        assertEquals(0, AsyncChatClient.parseRetryAfter("0"));
+        assertEquals(5000, AsyncChatClient.parseRetryAfter(" 5 "));
+        assertEquals(0, AsyncChatClient.parseRetryAfter("-3"));
+        // capped at the maximum delay
+        assertEquals(60_000, AsyncChatClient.parseRetryAfter("3600"));
+    }
+
+    @Test
+    void parseRetryAfterDate() {
+        String date = ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(30).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        long delay = AsyncChatClient.parseRetryAfter(date);
+        assertTrue(delay > 25_000 && delay <= 30_000, "delay " + delay);
+        String past = ZonedDateTime.now(ZoneOffset.UTC).minusMinutes(5).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        assertEquals(0, AsyncChatClient.parseRetryAfter(past));
+    }
+
+    @Test
+    void parseRetryAfterInvalid() {
+        assertEquals(-1, AsyncChatClient.parseRetryAfter(null));
+        assertEquals(-1, AsyncChatClient.parseRetryAfter(""));
+        assertEquals(-1, AsyncChatClient.parseRetryAfter("soon"));
+    }
+
+    @Test
+    void backoffIsJitteredAndCapped() {
+        for (int attempt = 0; attempt < 40; attempt++) {
+            long max = Math.min(60_000, 1000L << Math.min(attempt, 16));
+            for (int i = 0; i < 50; i++) {
+                long delay = AsyncChatClient.backoff(attempt);
+                assertTrue(delay >= max / 2 && delay <= max, "attempt " + attempt + " delay " + delay);
+            }
+        }
+    }
+
+    private String url() {
+        return server.url("/v1/chat/completions").toString();
+    }
+
+    private static Config config(int maxInFlight) {
+        Config config = new Config();
+        config.setApiKeys(new String[]{"key-a"});
+        config.setMaxInFlightRequests(maxInFlight);
+        config.setMaxRetries(3);
+        config.setKeyCooldown(ApiKeyScheduler.DEFAULT_COOLDOWN_MILLIS);
+        config.setLogger(new SilentLogger());
+        return config;
+    }
+
+    /**
+     * Holds every response until released, and counts the requests being served at the same time.
+     */
+    private static class BlockingDispatcher extends Dispatcher {
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final AtomicInteger received = new AtomicInteger();
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            received.incrementAndGet();
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                released.await(10, TimeUnit.SECONDS);
+                return new MockResponse().setBody(OK_BODY);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        boolean awaitReceived(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (received.get() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            // give the client the chance to send more than allowed
+            Thread.sleep(200);
+            return received.get() == count;
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+
+    private static class SilentLogger implements Logger {
+        @Override
+        public void info(String msg) {
+        }
+
+        @Override
+        public void warn(String msg) {
+        }
+
+        @Override
+        public void error(String msg) {
+        }
+
+        @Override
+        public void debug(String msg) {
+        }
+    }
+}